@@ -0,0 +1,318 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.regex.*;
+
+/**
+ * ActionCheck
+ *
+ * Checks that LrDriver.reduce() still does what b.cup says.  reduce()
+ * repeats the action of each production by hand, so after CUP the build
+ * runs
+ *
+ *     java ActionCheck parser.java LrDriver.java
+ *
+ * which takes the action CUP generated for each production from
+ * parser.java and the case for it from reduce(), and compares them as
+ * Java tokens, after making the two forms alike:
+ *
+ *   - a labeled symbol of the production (CUP's local "t" in
+ *     "type:t id:i") and values[b + k] both become the k-th symbol
+ *   - casts are dropped, and parser.numTokens is numTokens
+ *   - "return E;" is "RESULT = E;"
+ *   - a local that is only another name for a symbol (LinkedList sb =
+ *     (LinkedList)values[b];) is replaced by that symbol, and a local
+ *     that the action ends by returning is RESULT
+ *
+ * Everything else, the node classes, the order of the arguments, the
+ * constants and the bookkeeping of the action code, has to be the same.
+ * It also checks that the productions are numbered and written the same.
+ * It prints each production that differs and exits with status 1 if
+ * there are any.
+ */
+class ActionCheck {
+    // case N: // lhs ::= rhs
+    private static final Pattern CASE =
+        Pattern.compile("^\\s*case (\\d+): (?:\\{ )?// (\\S+ ::=.*?)\\s*$");
+    // a label CUP binds: Type name = (Type)((Symbol) CUP$parser$stack.peek()).value;
+    private static final Pattern LABEL = Pattern.compile(
+        "^\\s*\\S+ (\\w+) = .*CUP\\$parser\\$stack\\.(?:peek\\(\\)|elementAt\\(CUP\\$parser\\$top-(\\d+)\\))\\)\\.value;\\s*$");
+    private static final Pattern TOKEN = Pattern.compile(
+        "\\s*(\\w+|\"(?:[^\"\\\\]|\\\\.)*\"|'(?:[^'\\\\]|\\\\.)*'|\\+\\+|--|==|!=|<=|>=|&&|\\|\\||\\S)");
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: java ActionCheck parser.java LrDriver.java");
+            System.exit(-1);
+        }
+        Map<Integer, Action> generated = generated(read(args[0]));
+        Map<Integer, Action> driver = driver(read(args[1]));
+        int failures = 0;
+        for (int prod : generated.keySet()) {
+            Action g = generated.get(prod);
+            Action d = driver.get(prod);
+            String why = null;
+            if (d == null)
+                why = "no case in LrDriver.reduce()";
+            else if (!d.production.equals(g.production))
+                why = "LrDriver has it as " + d.production;
+            else if (!d.tokens.equals(g.tokens))
+                why = "the actions differ:\n  parser.java: " + String.join(" ", g.tokens)
+                      + "\n  LrDriver:    " + String.join(" ", d.tokens);
+            if (why != null) {
+                failures++;
+                System.out.println("production " + prod + " (" + g.production + "): " + why);
+            }
+        }
+        for (int prod : driver.keySet())
+            if (!generated.containsKey(prod)) {
+                failures++;
+                System.out.println("production " + prod + " (" + driver.get(prod).production
+                                   + "): not in parser.java");
+            }
+        System.out.println("ActionCheck: " + generated.size() + " productions, "
+                           + failures + " differ");
+        if (failures != 0) {
+            System.out.println("update LrDriver.reduce() from b.cup");
+            System.exit(1);
+        }
+    }
+
+    // one production's action, as normalized tokens
+    private static class Action {
+        String production;
+        List<String> tokens;
+
+        Action(String production, List<String> tokens) {
+            this.production = production;
+            this.tokens = tokens;
+        }
+    }
+
+    private static List<String> read(String file) throws IOException {
+        return Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8);
+    }
+
+    // the actions CUP$parser$do_action runs, but for $START
+    private static Map<Integer, Action> generated(List<String> lines) {
+        Map<Integer, Action> actions = new TreeMap<Integer, Action>();
+        for (int i = 0; i < lines.size(); i++) {
+            Matcher m = CASE.matcher(lines.get(i));
+            if (!m.matches() || m.group(2).startsWith("$START"))
+                continue;
+            String production = m.group(2);
+            int length = rhsLength(production);
+            // the symbols the labels are bound to
+            Map<String, String> symbols = new HashMap<String, String>();
+            StringBuilder code = new StringBuilder();
+            for (i++; !lines.get(i).contains("CUP$parser$result ="); i++) {
+                String line = lines.get(i);
+                Matcher label = LABEL.matcher(line);
+                if (label.matches()) {
+                    int fromTop = (label.group(2) == null) ? 0 : Integer.parseInt(label.group(2));
+                    symbols.put(label.group(1), "$" + (length - 1 - fromTop));
+                } else if (!line.matches("\\s*(\\{|\\S+ RESULT =null;|int \\w+(left|right) = .*)\\s*")) {
+                    code.append(line).append('\n');
+                }
+            }
+            List<String> tokens = tokenize(code.toString());
+            for (int j = 0; j < tokens.size(); j++) {
+                String symbol = symbols.get(tokens.get(j));
+                if (symbol != null && !(j > 0 && tokens.get(j - 1).equals(".")))
+                    tokens.set(j, symbol);
+            }
+            actions.put(Integer.parseInt(m.group(1)), new Action(production, normalize(tokens)));
+        }
+        return actions;
+    }
+
+    // the cases of LrDriver.reduce(); cases that share a body get it all
+    private static Map<Integer, Action> driver(List<String> lines) {
+        Map<Integer, Action> actions = new TreeMap<Integer, Action>();
+        int i = 0;
+        while (i < lines.size() && !lines.get(i).contains(" Object reduce("))
+            i++;
+        Map<Integer, String> group = new LinkedHashMap<Integer, String>();
+        boolean block = false;      // case N: { // ...
+        StringBuilder code = new StringBuilder();
+        for (; i < lines.size(); i++) {
+            String line = lines.get(i);
+            Matcher m = CASE.matcher(line);
+            boolean end = line.trim().startsWith("default:");
+            if ((m.matches() || end) && code.length() > 0) {
+                List<String> tokens = tokenize(code.toString());
+                if (block)      // without the braces
+                    tokens = tokens.subList(0, tokens.size() - 1);
+                for (Map.Entry<Integer, String> e : group.entrySet())
+                    actions.put(e.getKey(), new Action(e.getValue(), normalize(symbols(tokens))));
+                group.clear();
+                code.setLength(0);
+            }
+            if (end)
+                break;
+            if (m.matches()) {
+                group.put(Integer.parseInt(m.group(1)), m.group(2));
+                block = line.contains("{ //");
+            } else if (!group.isEmpty()) {
+                code.append(line).append('\n');
+            }
+        }
+        return actions;
+    }
+
+    // values[b] and values[b + k] to $k
+    private static List<String> symbols(List<String> in) {
+        List<String> out = new ArrayList<String>();
+        for (int j = 0; j < in.size(); j++) {
+            if (in.get(j).equals("values") && at(in, j + 1, "[") && at(in, j + 2, "b")) {
+                if (at(in, j + 3, "]")) {
+                    out.add("$0");
+                    j += 3;
+                    continue;
+                }
+                if (at(in, j + 3, "+") && at(in, j + 5, "]")) {
+                    out.add("$" + in.get(j + 4));
+                    j += 5;
+                    continue;
+                }
+            }
+            out.add(in.get(j));
+        }
+        return out;
+    }
+
+    // what both forms have in common (see the class comment)
+    private static List<String> normalize(List<String> in) {
+        List<String> t = new ArrayList<String>();
+        for (int j = 0; j < in.size(); j++) {
+            String s = in.get(j);
+            if (s.equals("parser") && at(in, j + 1, ".")) {
+                j++;
+                continue;
+            }
+            if (s.equals("return")) {
+                t.add("RESULT");
+                t.add("=");
+                continue;
+            }
+            t.add(s);
+        }
+        t = withoutCasts(t);
+
+        // local declarations: Type name = ... at the start of a statement
+        Map<String, String> aliases = new HashMap<String, String>();
+        Set<String> locals = new HashSet<String>();
+        List<String> u = new ArrayList<String>();
+        for (int j = 0; j < t.size(); j++) {
+            int name = statementStart(u) ? declaredName(t, j) : -1;
+            if (name < 0) {
+                u.add(t.get(j));
+                continue;
+            }
+            String local = t.get(name);
+            if (t.get(name + 2).startsWith("$") && at(t, name + 3, ";")) {
+                aliases.put(local, t.get(name + 2));
+                j = name + 3;
+            } else {
+                locals.add(local);
+                j = name;
+                u.add(local);
+            }
+        }
+        // an action that ends with RESULT = local; built RESULT in local
+        int n = u.size();
+        if (n >= 4 && u.get(n - 4).equals("RESULT") && u.get(n - 3).equals("=")
+                && locals.contains(u.get(n - 2)) && u.get(n - 1).equals(";")) {
+            aliases.put(u.get(n - 2), "RESULT");
+            u = u.subList(0, n - 4);
+        }
+        List<String> out = new ArrayList<String>();
+        for (int j = 0; j < u.size(); j++) {
+            String s = u.get(j);
+            String alias = aliases.get(s);
+            out.add((alias != null && !(j > 0 && u.get(j - 1).equals("."))) ? alias : s);
+        }
+        return out;
+    }
+
+    // drops (Type) and (Type<...>) in front of an operand
+    private static List<String> withoutCasts(List<String> in) {
+        List<String> out = new ArrayList<String>();
+        for (int j = 0; j < in.size(); j++) {
+            if (in.get(j).equals("(") && isType(in.get(j + 1))
+                    && !(j > 0 && isName(in.get(j - 1)))) {
+                int close = typeEnd(in, j + 1);
+                if (close > 0 && at(in, close, ")") && close + 1 < in.size()
+                        && (isName(in.get(close + 1)) || in.get(close + 1).equals("("))) {
+                    j = close;
+                    continue;
+                }
+            }
+            out.add(in.get(j));
+        }
+        return out;
+    }
+
+    // if a declaration Type name = starts at j, the index of name
+    private static int declaredName(List<String> t, int j) {
+        if (!isType(t.get(j)))
+            return -1;
+        int name = typeEnd(t, j);
+        if (name < 0 || name + 1 >= t.size() || !isName(t.get(name)) || !at(t, name + 1, "="))
+            return -1;
+        return name;
+    }
+
+    // the index after a type name and its type arguments, or -1
+    private static int typeEnd(List<String> t, int j) {
+        j++;
+        if (!at(t, j, "<"))
+            return j;
+        int depth = 0;
+        for (; j < t.size(); j++) {
+            String s = t.get(j);
+            if (s.equals("<"))
+                depth++;
+            else if (s.equals(">") && --depth == 0)
+                return j + 1;
+            else if (!s.equals(",") && !isName(s))
+                return -1;
+        }
+        return -1;
+    }
+
+    private static boolean statementStart(List<String> u) {
+        if (u.isEmpty())
+            return true;
+        String last = u.get(u.size() - 1);
+        return last.equals(";") || last.equals("{") || last.equals("}");
+    }
+
+    private static boolean isType(String s) {
+        return Character.isUpperCase(s.charAt(0));
+    }
+
+    private static boolean isName(String s) {
+        char c = s.charAt(0);
+        return Character.isJavaIdentifierStart(c) || c == '$';
+    }
+
+    private static boolean at(List<String> t, int j, String s) {
+        return j < t.size() && t.get(j).equals(s);
+    }
+
+    private static int rhsLength(String production) {
+        String rhs = production.substring(production.indexOf("::=") + 3).trim();
+        return rhs.isEmpty() ? 0 : rhs.split("\\s+").length;
+    }
+
+    private static List<String> tokenize(String code) {
+        List<String> tokens = new ArrayList<String>();
+        code = code.replaceAll("(?s)/\\*.*?\\*/", " ").replaceAll("//[^\n]*", " ");
+        Matcher m = TOKEN.matcher(code);
+        while (m.find())
+            tokens.add(m.group(1));
+        return tokens;
+    }
+}
@@ -0,0 +1,259 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.*;
+import java.util.*;
+
+/**
+ * AnalysisCache
+ *
+ * A directory of finished P4 runs, keyed by a hash of the input file, the
+ * build of the analyzer and the options that change the output.  The
+ * build is identified by the class files it was loaded from, so after
+ * any rebuild that changes one of them earlier entries are never hit.  An entry
+ * holds what the run printed to stderr, whether name analysis failed and
+ * the unparsed program, so a hit can reproduce the run without lexing,
+ * parsing or analyzing anything.
+ *
+ * Several processes may share one directory: entries are written to a
+ * temporary file and renamed into place atomically, and a missing or
+ * unreadable entry is just a miss.  When the directory grows past its size
+ * limit, the least recently used entries are deleted (every hit sets the
+ * entry's modification time, which serves as its access time).
+ *
+ * The directory also holds parsed programs in the binary AST format
+ * (AstWriter), keyed by the input alone, so that a run that misses (say,
+ * with different options) still skips lexing and parsing.  They share the
+ * size limit with the entries.
+ */
+class AnalysisCache {
+    // a hash of the class files (or jar) this was loaded from
+    static final String BUILD = buildId();
+
+    private static final int MAGIC = 0x62433431;   // "bC41"
+    private static final String SUFFIX = ".entry";
+    private static final String AST_SUFFIX = ".ast";
+
+    private Path dir;
+    private long maxBytes;
+
+    /**
+     * @param dir the cache directory (created if needed)
+     * @param maxBytes total size of the entries to keep
+     */
+    public AnalysisCache(String dir, long maxBytes) throws IOException {
+        this.dir = Paths.get(dir);
+        this.maxBytes = maxBytes;
+        Files.createDirectories(this.dir);
+    }
+
+    /**
+     * Returns the key for an input file analyzed with the given options.
+     */
+    public static String key(byte[] input, String options) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update((BUILD + "\0" + options + "\0").getBytes("UTF-8"));
+            md.update(input);
+            return hex(md.digest());
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // hashes the class files next to this one (the default package: P4,
+    // the AST, the parser tables, AstWriter's format, ...), or the jar
+    private static String buildId() {
+        try {
+            Path where = Paths.get(AnalysisCache.class.getProtectionDomain()
+                                   .getCodeSource().getLocation().toURI());
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            if (Files.isDirectory(where)) {
+                List<Path> classes = new ArrayList<Path>();
+                try (DirectoryStream<Path> ds = Files.newDirectoryStream(where, "*.class")) {
+                    for (Path p : ds)
+                        classes.add(p);
+                }
+                Collections.sort(classes);
+                for (Path p : classes) {
+                    md.update((p.getFileName() + "\0").getBytes("UTF-8"));
+                    md.update(Files.readAllBytes(p));
+                }
+            } else {
+                md.update(Files.readAllBytes(where));
+            }
+            return hex(md.digest());
+        } catch (Exception ex) {
+            // unknown build: match nothing stored before this run
+            return UUID.randomUUID().toString();
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes)
+            sb.append(String.format("%02x", b & 0xff));
+        return sb.toString();
+    }
+
+    /**
+     * Returns the key for the parsed AST of an input file.
+     */
+    public static String astKey(byte[] input) {
+        return key(input, "ast" + AstWriter.VERSION);
+    }
+
+    /**
+     * Returns the entry for key, or null if there is none.
+     */
+    public Entry lookup(String key) {
+        Path file = dir.resolve(key + SUFFIX);
+        Entry e;
+        try {
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+            if (in.getInt() != MAGIC)
+                return null;
+            boolean failed = in.get() != 0;
+            byte[] diagnostics = readBytes(in);
+            byte[] output = readBytes(in);
+            e = new Entry(failed, diagnostics, output);
+        } catch (IOException ex) {
+            return null;        // missing, being evicted, or truncated
+        } catch (RuntimeException ex) {
+            return null;        // corrupt: underflow, ...
+        }
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ex) {
+            // evicted meanwhile; the entry we read is still good
+        }
+        return e;
+    }
+
+    // a length-prefixed array, as DataOutputStream wrote it; the length is
+    // checked against what is left, so a corrupt one cannot make us
+    // allocate more than the file holds
+    private static byte[] readBytes(ByteBuffer in) throws IOException {
+        int n = in.getInt();
+        if (n < 0 || n > in.remaining())
+            throw new IOException("bad length " + n + " in cache entry");
+        byte[] b = new byte[n];
+        in.get(b);
+        return b;
+    }
+
+    /**
+     * Adds (or replaces) the entry for key, then evicts old entries if
+     * the cache is over its size limit.
+     */
+    public void store(String key, Entry e) throws IOException {
+        Path tmp = Files.createTempFile(dir, key, ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeBoolean(e.failed);
+                out.writeInt(e.diagnostics.length);
+                out.write(e.diagnostics);
+                out.writeInt(e.output.length);
+                out.write(e.output);
+            }
+            Files.move(tmp, dir.resolve(key + SUFFIX),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        evict();
+    }
+
+    /**
+     * Returns the AST stored under key, or null if there is none.
+     */
+    public ProgramNode loadAst(String key) {
+        Path file = dir.resolve(key + AST_SUFFIX);
+        ProgramNode ast;
+        try {
+            ast = AstReader.read(file);
+        } catch (IOException ex) {
+            return null;        // missing, being evicted, or truncated
+        }
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ex) {
+            // evicted meanwhile
+        }
+        return ast;
+    }
+
+    /**
+     * Stores the AST of a program under key.
+     */
+    public void storeAst(String key, ProgramNode ast) throws IOException {
+        AstWriter w = new AstWriter();
+        ast.serialize(w);
+        Path tmp = Files.createTempFile(dir, key, ".tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+                w.writeTo(out);
+            }
+            Files.move(tmp, dir.resolve(key + AST_SUFFIX),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        evict();
+    }
+
+    // delete least recently used entries and ASTs until the total size fits
+    private void evict() throws IOException {
+        List<Path> entries = new ArrayList<Path>();
+        final Map<Path, Long> used = new HashMap<Path, Long>();
+        long total = 0;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir,
+                 "*{" + SUFFIX + "," + AST_SUFFIX + "}")) {
+            for (Path p : ds) {
+                try {
+                    total += Files.size(p);
+                    used.put(p, Files.getLastModifiedTime(p).toMillis());
+                    entries.add(p);
+                } catch (IOException ex) {
+                    // deleted by another process
+                }
+            }
+        }
+        if (total <= maxBytes)
+            return;
+        entries.sort((a, b) -> Long.compare(used.get(a), used.get(b)));
+        for (Path p : entries) {
+            if (total <= maxBytes)
+                break;
+            try {
+                long size = Files.size(p);
+                if (Files.deleteIfExists(p))
+                    total -= size;
+            } catch (IOException ex) {
+                // deleted by another process
+            }
+        }
+    }
+
+    /**
+     * Entry
+     *
+     * The recorded result of one run.
+     */
+    static class Entry {
+        boolean failed;       // name analysis failed, nothing was unparsed
+        byte[] diagnostics;   // everything written to stderr
+        byte[] output;        // contents of the output file
+
+        Entry(boolean failed, byte[] diagnostics, byte[] output) {
+            this.failed = failed;
+            this.diagnostics = diagnostics;
+            this.output = output;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * AstReader
+ *
+ * Rebuilds an AST written by AstWriter (see there for the format).  The
+ * file is memory-mapped and decoded in one pass, with no lexing or
+ * parsing; the nodes come out exactly as the parser built them, including
+ * the positions and IdNode numbers, so name analysis and unparsing give
+ * the same results.
+ */
+class AstReader {
+    private ByteBuffer buf;
+    private String[] strings;
+
+    private AstReader(ByteBuffer buf) {
+        this.buf = buf;
+    }
+
+    /**
+     * Reads the program stored in file.
+     * @throws IOException if it cannot be read or is not a valid AST file
+     */
+    public static ProgramNode read(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            return new AstReader(buf).readProgram();
+        } catch (RuntimeException ex) {
+            // underflow, a node of the wrong class, a bad index, ...
+            throw new IOException("corrupt AST file " + file, ex);
+        }
+    }
+
+    private ProgramNode readProgram() throws IOException {
+        if (buf.getInt() != AstWriter.MAGIC || buf.getInt() != AstWriter.VERSION)
+            throw new IOException("not an AST file");
+        strings = new String[readLength()];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] b = new byte[readLength()];
+            buf.get(b);
+            strings[i] = new String(b, StandardCharsets.UTF_8);
+        }
+        ASTnode root = readNode();
+        if (buf.hasRemaining())
+            throw new IOException("trailing bytes in AST file");
+        return (ProgramNode)root;
+    }
+
+    private ASTnode readNode() throws IOException {
+        int tag = buf.get();
+        switch (tag) {
+            case AstWriter.NULL:
+                return null;
+            case AstWriter.PROGRAM: {
+                int numIds = readInt();
+                int[] declTokens = readInts();
+                return new ProgramNode((DeclListNode)readNode(), numIds, declTokens);
+            }
+            case AstWriter.DECL_LIST:
+                return DeclListNode.of(this.<DeclNode>readList());
+            case AstWriter.FORMALS_LIST:
+                return new FormalsListNode(this.<FormalDeclNode>readList());
+            case AstWriter.FN_BODY:
+                return new FnBodyNode((DeclListNode)readNode(), (StmtListNode)readNode());
+            case AstWriter.STMT_LIST:
+                return StmtListNode.of(this.<StmtNode>readList());
+            case AstWriter.EXP_LIST:
+                return ExpListNode.of(this.<ExpNode>readList());
+            case AstWriter.VAR_DECL: {
+                TypeNode type = (TypeNode)readNode();
+                IdNode id = (IdNode)readNode();
+                return new VarDeclNode(type, id, readInt());
+            }
+            case AstWriter.FN_DECL:
+                return new FnDeclNode((TypeNode)readNode(), (IdNode)readNode(),
+                                      (FormalsListNode)readNode(), (FnBodyNode)readNode());
+            case AstWriter.FORMAL_DECL:
+                return new FormalDeclNode((TypeNode)readNode(), (IdNode)readNode());
+            case AstWriter.STRUCT_DECL:
+                return new StructDeclNode((IdNode)readNode(), (DeclListNode)readNode());
+            case AstWriter.INT_TYPE:
+                return new IntNode();
+            case AstWriter.BOOL_TYPE:
+                return new BoolNode();
+            case AstWriter.VOID_TYPE:
+                return new VoidNode();
+            case AstWriter.STRUCT_TYPE:
+                return new StructNode((IdNode)readNode());
+            case AstWriter.ASSIGN_STMT:
+                return new AssignStmtNode((AssignNode)readNode());
+            case AstWriter.PRE_INC_STMT:
+                return new PreIncStmtNode((ExpNode)readNode());
+            case AstWriter.PRE_DEC_STMT:
+                return new PreDecStmtNode((ExpNode)readNode());
+            case AstWriter.RECEIVE_STMT:
+                return new ReceiveStmtNode((ExpNode)readNode());
+            case AstWriter.PRINT_STMT:
+                return new PrintStmtNode((ExpNode)readNode());
+            case AstWriter.IF_STMT:
+                return new IfStmtNode((ExpNode)readNode(), (DeclListNode)readNode(),
+                                      (StmtListNode)readNode());
+            case AstWriter.IF_ELSE_STMT:
+                return new IfElseStmtNode((ExpNode)readNode(),
+                                          (DeclListNode)readNode(), (StmtListNode)readNode(),
+                                          (DeclListNode)readNode(), (StmtListNode)readNode());
+            case AstWriter.WHILE_STMT:
+                return new WhileStmtNode((ExpNode)readNode(), (DeclListNode)readNode(),
+                                         (StmtListNode)readNode());
+            case AstWriter.REPEAT_STMT:
+                return new RepeatStmtNode((ExpNode)readNode(), (DeclListNode)readNode(),
+                                          (StmtListNode)readNode());
+            case AstWriter.CALL_STMT:
+                return new CallStmtNode((CallExpNode)readNode());
+            case AstWriter.RETURN_STMT:
+                return new ReturnStmtNode((ExpNode)readNode());
+            case AstWriter.INT_LIT:
+                return new IntLitNode(readInt(), readInt(), readInt());
+            case AstWriter.STRING_LIT:
+                return new StringLitNode(readInt(), readInt(), readString());
+            case AstWriter.TRUE:
+                return new TrueNode(readInt(), readInt());
+            case AstWriter.FALSE:
+                return new FalseNode(readInt(), readInt());
+            case AstWriter.ID:
+                return new IdNode(readInt(), readInt(), readString(), readInt());
+            case AstWriter.DOT_ACCESS:
+                return new DotAccessExpNode((ExpNode)readNode(), (IdNode)readNode());
+            case AstWriter.ASSIGN:
+                return new AssignNode((ExpNode)readNode(), (ExpNode)readNode());
+            case AstWriter.CALL_EXP:
+                return new CallExpNode((IdNode)readNode(), (ExpListNode)readNode());
+            case AstWriter.UNARY_MINUS:
+                return new UnaryMinusNode((ExpNode)readNode());
+            case AstWriter.NOT:
+                return new NotNode((ExpNode)readNode());
+            case AstWriter.PLUS:
+                return new PlusNode((ExpNode)readNode(), (ExpNode)readNode());
+            case AstWriter.MINUS:
+                return new MinusNode((ExpNode)readNode(), (ExpNode)readNode());
+            case AstWriter.TIMES:
+                return new TimesNode((ExpNode)readNode(), (ExpNode)readNode());
+            case AstWriter.DIVIDE:
+                return new DivideNode((ExpNode)readNode(), (ExpNode)readNode());
+            case AstWriter.AND:
+                return new AndNode((ExpNode)readNode(), (ExpNode)readNode());
+            case AstWriter.OR:
+                return new OrNode((ExpNode)readNode(), (ExpNode)readNode());
+            case AstWriter.EQUALS:
+                return new EqualsNode((ExpNode)readNode(), (ExpNode)readNode());
+            case AstWriter.NOT_EQUALS:
+                return new NotEqualsNode((ExpNode)readNode(), (ExpNode)readNode());
+            case AstWriter.LESS:
+                return new LessNode((ExpNode)readNode(), (ExpNode)readNode());
+            case AstWriter.GREATER:
+                return new GreaterNode((ExpNode)readNode(), (ExpNode)readNode());
+            case AstWriter.LESS_EQ:
+                return new LessEqNode((ExpNode)readNode(), (ExpNode)readNode());
+            case AstWriter.GREATER_EQ:
+                return new GreaterEqNode((ExpNode)readNode(), (ExpNode)readNode());
+            default:
+                throw new IOException("bad node tag " + tag + " in AST file");
+        }
+    }
+
+    // a list as the parser builds them (a LinkedList, or the shared empty
+    // list)
+    @SuppressWarnings("unchecked")
+    private <T extends ASTnode> List<T> readList() throws IOException {
+        int n = readLength();
+        if (n == 0)
+            return Collections.emptyList();
+        List<T> list = new LinkedList<T>();
+        for (int i = 0; i < n; i++)
+            list.add((T)readNode());
+        return list;
+    }
+
+    private String readString() throws IOException {
+        int i = readVarint();
+        if (i < 0 || i >= strings.length)
+            throw new IOException("bad string index in AST file");
+        return strings[i];
+    }
+
+    private int readInt() throws IOException {
+        int n = readVarint();
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    private int[] readInts() throws IOException {
+        int n = readInt();
+        if (n < -1 || n > buf.remaining())
+            throw new IOException("bad array length " + n);
+        if (n < 0)
+            return null;
+        int[] a = new int[n];
+        for (int i = 0; i < n; i++)
+            a[i] = readInt();
+        return a;
+    }
+
+    // a count of things still to come, each at least one byte long, so
+    // a corrupt count cannot make us allocate more than the file holds
+    private int readLength() throws IOException {
+        int n = readVarint();
+        if (n < 0 || n > buf.remaining())
+            throw new IOException("bad length " + n + " in AST file");
+        return n;
+    }
+
+    private int readVarint() throws IOException {
+        int n = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buf.get();
+            n |= (b & 0x7f) << shift;
+            if (b >= 0)
+                return n;
+        }
+        throw new IOException("bad varint in AST file");
+    }
+}
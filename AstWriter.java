@@ -0,0 +1,176 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * AstWriter
+ *
+ * Writes an AST in the binary AST format read by AstReader.  Every node
+ * class in ast.java writes itself through serialize(AstWriter).
+ *
+ * The format is:
+ *
+ *     int    MAGIC, VERSION          (big-endian)
+ *     varint number of strings, then each string as varint length + UTF-8
+ *     nodes  the tree in pre-order
+ *
+ * A node is its tag (one of the constants below) followed by its fields
+ * in declaration order: child nodes, lists (varint count + nodes), ints
+ * (zigzag varints), int arrays (length, -1 for none, then the ints) and
+ * strings (varint index into the string table).
+ * Identifiers and string literals go through the table, so each distinct
+ * name is stored once.  A missing child is the tag NULL.
+ */
+class AstWriter {
+    static final int MAGIC = 0x62415354;    // "bAST"
+    static final int VERSION = 2;
+
+    // node tags
+    static final int NULL = 0;
+    static final int PROGRAM = 1;
+    static final int DECL_LIST = 2;
+    static final int FORMALS_LIST = 3;
+    static final int FN_BODY = 4;
+    static final int STMT_LIST = 5;
+    static final int EXP_LIST = 6;
+    static final int VAR_DECL = 7;
+    static final int FN_DECL = 8;
+    static final int FORMAL_DECL = 9;
+    static final int STRUCT_DECL = 10;
+    static final int INT_TYPE = 11;
+    static final int BOOL_TYPE = 12;
+    static final int VOID_TYPE = 13;
+    static final int STRUCT_TYPE = 14;
+    static final int ASSIGN_STMT = 15;
+    static final int PRE_INC_STMT = 16;
+    static final int PRE_DEC_STMT = 17;
+    static final int RECEIVE_STMT = 18;
+    static final int PRINT_STMT = 19;
+    static final int IF_STMT = 20;
+    static final int IF_ELSE_STMT = 21;
+    static final int WHILE_STMT = 22;
+    static final int REPEAT_STMT = 23;
+    static final int CALL_STMT = 24;
+    static final int RETURN_STMT = 25;
+    static final int INT_LIT = 26;
+    static final int STRING_LIT = 27;
+    static final int TRUE = 28;
+    static final int FALSE = 29;
+    static final int ID = 30;
+    static final int DOT_ACCESS = 31;
+    static final int ASSIGN = 32;
+    static final int CALL_EXP = 33;
+    static final int UNARY_MINUS = 34;
+    static final int NOT = 35;
+    static final int PLUS = 36;
+    static final int MINUS = 37;
+    static final int TIMES = 38;
+    static final int DIVIDE = 39;
+    static final int AND = 40;
+    static final int OR = 41;
+    static final int EQUALS = 42;
+    static final int NOT_EQUALS = 43;
+    static final int LESS = 44;
+    static final int GREATER = 45;
+    static final int LESS_EQ = 46;
+    static final int GREATER_EQ = 47;
+
+    private ByteArrayOutputStream nodes = new ByteArrayOutputStream(1 << 16);
+    private HashMap<String, Integer> stringIndex = new HashMap<String, Integer>();
+    private List<String> strings = new ArrayList<String>();
+    // set by countNodes(): only the tags matter
+    private boolean counting = false;
+    private long numNodes = 0;
+
+    /**
+     * Returns the number of nodes in the tree under root (for P4 --stats).
+     * A function body that has not been parsed yet counts as one node and
+     * stays unparsed.
+     */
+    static long countNodes(ASTnode root) {
+        AstWriter w = new AstWriter();
+        w.counting = true;
+        root.serialize(w);
+        return w.numNodes;
+    }
+
+    boolean isCounting() {
+        return counting;
+    }
+
+    public void writeTag(int tag) {
+        if (tag != NULL)
+            numNodes++;
+        if (!counting)
+            nodes.write(tag);
+    }
+
+    public void writeInt(int n) {
+        if (counting)
+            return;
+        writeVarint(nodes, (n << 1) ^ (n >> 31));
+    }
+
+    // an int array as its length (-1 for null) and the ints
+    public void writeInts(int[] a) {
+        writeInt(a == null ? -1 : a.length);
+        if (a != null)
+            for (int n : a)
+                writeInt(n);
+    }
+
+    public void writeString(String s) {
+        if (counting)
+            return;
+        Integer index = stringIndex.get(s);
+        if (index == null) {
+            index = strings.size();
+            stringIndex.put(s, index);
+            strings.add(s);
+        }
+        writeVarint(nodes, index);
+    }
+
+    // writes a list: its length, then each node
+    public void writeList(List<? extends ASTnode> list) {
+        if (!counting)
+            writeVarint(nodes, list.size());
+        for (ASTnode node : list)
+            node.serialize(this);
+    }
+
+    // writes a child that may be null
+    public void writeOptional(ASTnode node) {
+        if (node == null)
+            writeTag(NULL);
+        else
+            node.serialize(this);
+    }
+
+    /**
+     * Writes the header, the string table and everything serialized so far.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        ByteArrayOutputStream table = new ByteArrayOutputStream();
+        writeVarint(table, strings.size());
+        for (String s : strings) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            writeVarint(table, b.length);
+            table.write(b, 0, b.length);
+        }
+        table.writeTo(data);
+        nodes.writeTo(data);
+        data.flush();
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int n) {
+        while ((n & ~0x7f) != 0) {
+            out.write((n & 0x7f) | 0x80);
+            n >>>= 7;
+        }
+        out.write(n);
+    }
+}
@@ -0,0 +1,122 @@
+import java.util.*;
+
+/**
+ * BaseSymTable
+ *
+ * What every SymTable keeps the same way: the struct declarations, the
+ * Resolution, DependencyIndex and ErrorLimits of the analysis, the
+ * SymTableStats, and the throwing forms of the try* methods.  A subclass
+ * keeps the scopes.
+ */
+abstract class BaseSymTable implements SymTable {
+    //melo
+    protected HashMap<String, Sym> structDefinedList;
+    // where IdNodes record what they resolved to
+    private Resolution resolution;
+    // when set, lookups that reach the globals are reported to it
+    protected DependencyIndex<?> deps;
+    // what name analysis errors count against; none unless set
+    private ErrorLimits limits = new ErrorLimits();
+    // work done so far; null unless SymTableStats.ENABLED
+    protected SymTableStats stats;
+    //
+
+    protected BaseSymTable() {
+        structDefinedList = new HashMap<String, Sym>();
+        if (SymTableStats.ENABLED)
+            stats = new SymTableStats();
+    }
+
+    // the number of scopes, the global one included
+    protected abstract int numScopes();
+
+    //melo
+    public Resolution getResolution(){
+        return this.resolution;
+    }
+    public void setResolution(Resolution resolution){
+        this.resolution = resolution;
+    }
+    public DependencyIndex<?> getDependencyIndex(){
+        return this.deps;
+    }
+    public void setDependencyIndex(DependencyIndex<?> deps){
+        this.deps = deps;
+    }
+    public ErrorLimits getErrorLimits(){
+        return this.limits;
+    }
+    public void setErrorLimits(ErrorLimits limits){
+        this.limits = limits;
+    }
+    public SymTableStats getStats(){
+        if (!SymTableStats.ENABLED)
+            return null;
+        return stats.snapshot();
+    }
+    public HashMap<String, Sym> getStructDefinedList(){
+        return this.structDefinedList;
+    }
+    public void setStructDefinedList(HashMap<String, Sym> OldStructDefinedList){
+        this.structDefinedList = OldStructDefinedList;
+    }
+    public void addStruct(String name, Sym sym) throws DuplicateSymException{
+        if (tryAddStruct(name, sym) != null)
+            throw new DuplicateSymException();
+    }
+    public Sym tryAddStruct(String name, Sym sym){
+        Sym old = structDefinedList.get(name);
+        if (old == null)
+            old = this.lookupGlobal(name);
+        if (old != null)
+            return old;
+        structDefinedList.put(name,sym);
+        return null;
+    }
+    public Sym lookupStruct(String name){
+        if (deps != null)
+            deps.observe(name, structDefinedList.get(name), true);
+        if (SymTableStats.ENABLED) {
+            stats.lookupStruct++;
+            stats.atDepth(numScopes());
+            if (structDefinedList.get(name) == null)
+                stats.lookupStructMisses++;
+        }
+        if (structDefinedList.isEmpty())
+            return null;
+        return structDefinedList.get(name);
+    }
+    //
+
+    public void addDecl(String name, Sym sym) 
+	throws DuplicateSymException, EmptySymTableException, WrongArgumentException {
+	if (name == null && sym == null) {
+	    throw new WrongArgumentException("Arguments name and sym are null.");
+	}
+	else if (name == null) {
+	    throw new WrongArgumentException("Argument name is null.");
+	}
+	else if (sym == null) {
+	    throw new WrongArgumentException("Argument sym is null.");
+	}
+               
+        if (numScopes() == 0) {
+            throw new EmptySymTableException();
+        }
+        if (tryAddDecl(name, sym) != null)
+            throw new DuplicateSymException();
+    }
+
+    public void removeScope() throws EmptySymTableException {
+        if (!tryRemoveScope())
+            throw new EmptySymTableException();
+    }
+
+    //melo
+    public void printStr() {
+        System.out.print("\n=== SymStr Table ===\n");
+        System.out.println(structDefinedList.toString());
+        System.out.println();
+    }
+    //
+}
@@ -0,0 +1,169 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * DependencyCheck
+ *
+ * A test of what DependencyIndex records.  It analyzes a small program
+ * with an index attached (against a table of each SymTable kind), then
+ * edits one global declaration and inserts another the way
+ * IncrementalAnalyzer does, and checks getDependents() and isUpToDate()
+ * (against the globals declared in front of each declaration) before
+ * and after the edits and after forget().
+ *
+ *     java DependencyCheck
+ *
+ * It prints the checks that fail and exits with status 1 if there are
+ * any.
+ */
+class DependencyCheck {
+    private static final String PROGRAM =
+        "int g;\n" +
+        "bool h;\n" +
+        "struct S {\n" +
+        "    int f;\n" +
+        "}\n" +
+        "int useG() {\n" +
+        "    g = 1;\n" +
+        "    ret;\n" +
+        "}\n" +
+        "void useMore() {\n" +
+        "    struct S s;\n" +
+        "    h = tru;\n" +
+        "    useG();\n" +
+        "}\n" +
+        "int noUses;\n" +
+        "void useK() {\n" +
+        "    k = 1;\n" +
+        "}\n";
+
+    private String kind;
+    private int checks = 0;
+    private int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        int checks = 0;
+        int failures = 0;
+        for (String kind : new String[] { "list", "hash" }) {
+            DependencyCheck check = new DependencyCheck();
+            check.kind = kind;
+            check.run();
+            checks += check.checks;
+            failures += check.failures;
+        }
+        System.out.println("DependencyCheck: " + checks + " checks, "
+                           + failures + " failures");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private void run() throws Exception {
+        SymTable globals = SymTable.create(kind);
+        DependencyIndex<DeclNode> deps = new DependencyIndex<DeclNode>();
+        globals.setDependencyIndex(deps);
+        Map<String, DeclNode> decl = analyze(PROGRAM, globals);
+        HashMap<String, Sym> scope = globals.getGlobalScope();
+        Sym g = scope.get("g");
+        Sym h = scope.get("h");
+        Sym useG = scope.get("useG");
+        Sym noUses = scope.get("noUses");
+        Sym s = globals.getStructDefinedList().get("S");
+
+        // who uses what
+        expect("users of g", deps.getDependents(g), decl.get("useG"));
+        expect("users of h", deps.getDependents(h), decl.get("useMore"));
+        expect("users of S", deps.getDependents(s), decl.get("useMore"));
+        expect("users of useG", deps.getDependents(useG), decl.get("useMore"));
+        expect("users of noUses", deps.getDependents(noUses));
+        List<String> order = new ArrayList<String>(decl.keySet());
+        for (String name : order)
+            check(name + " up to date", deps.isUpToDate(decl.get(name), before(name, order, globals)));
+
+        // edit "int g;" into "bool g;": a new Sym for g
+        scope.remove("g");
+        DeclNode newG = analyze("bool g;\n", globals).get("g");
+        Sym g2 = scope.get("g");
+        check("g re-declared", g2 != null && g2 != g);
+        check("new g up to date", deps.isUpToDate(newG, before("g", order, globals)));
+        check("useG out of date", !deps.isUpToDate(decl.get("useG"), before("useG", order, globals)));
+        for (String name : new String[] { "h", "S", "useMore", "noUses", "useK" })
+            check(name + " still up to date",
+                  deps.isUpToDate(decl.get(name), before(name, order, globals)));
+        expect("users of the old g", deps.getDependents(g), decl.get("useG"));
+        expect("users of the new g", deps.getDependents(g2));
+
+        // inserting "int k;" first changes what useK's failed lookup finds
+        DeclNode k = analyze("int k;\n", globals).get("k");
+        order.add(0, "k");
+        check("useK out of date", !deps.isUpToDate(decl.get("useK"), before("useK", order, globals)));
+        check("useMore not affected by k",
+              deps.isUpToDate(decl.get("useMore"), before("useMore", order, globals)));
+
+        // forgetting a declaration drops it from every set
+        deps.forget(decl.get("useG"));
+        expect("users of the old g after forget", deps.getDependents(g));
+        check("forgotten useG not up to date",
+              !deps.isUpToDate(decl.get("useG"), before("useG", order, globals)));
+        expect("users of useG after forgetting useG", deps.getDependents(useG), decl.get("useMore"));
+        deps.forget(decl.get("useMore"));
+        expect("users of h after forget", deps.getDependents(h));
+        expect("users of S after forget", deps.getDependents(s));
+        expect("users of useG after forget", deps.getDependents(useG));
+        deps.forget(decl.get("useMore"));   // again: nothing to drop
+        check("useMore forgotten", !deps.isUpToDate(decl.get("useMore"), before("useMore", order, globals)));
+        check("noUses kept", deps.isUpToDate(decl.get("noUses"), before("noUses", order, globals)));
+        deps.forget(k);
+        check("forgotten k not up to date", !deps.isUpToDate(k, before("k", order, globals)));
+    }
+
+    // the globals declared in front of name (in the given order), bound
+    // as they are in globals: what IncrementalAnalyzer checks against
+    private SymTable before(String name, List<String> order, SymTable globals) {
+        SymTable t = SymTable.create(kind);
+        for (String n : order.subList(0, order.indexOf(name))) {
+            Sym sym = globals.getGlobalScope().get(n);
+            if (sym != null)
+                t.getGlobalScope().put(n, sym);
+            sym = globals.getStructDefinedList().get(n);
+            if (sym != null)
+                t.getStructDefinedList().put(n, sym);
+        }
+        return t;
+    }
+
+    // parses and analyzes source against globals; returns its top-level
+    // declarations by name
+    private static Map<String, DeclNode> analyze(String source, SymTable globals) throws Exception {
+        CharNum.num = 1;
+        ProgramNode program = new LrDriver(new Yylex(new StringReader(source))).parse();
+        ErrMsg.collector = new ArrayList<Diagnostic>();    // useK's error
+        try {
+            program.nameAnalyzer(globals);
+        } finally {
+            ErrMsg.collector = null;
+        }
+        Map<String, DeclNode> decls = new LinkedHashMap<String, DeclNode>();
+        for (DeclNode d : program.getDeclList().getDecls())
+            decls.put(d.getId().getID(), d);
+        return decls;
+    }
+
+    private void expect(String what, Set<DeclNode> actual, DeclNode... expected) {
+        check(what + " is " + names(Arrays.asList(expected)) + ", not " + names(actual),
+              actual.equals(new HashSet<DeclNode>(Arrays.asList(expected))));
+    }
+
+    private static List<String> names(Collection<DeclNode> decls) {
+        List<String> names = new ArrayList<String>();
+        for (DeclNode d : decls)
+            names.add(d.getId().getID());
+        return names;
+    }
+
+    private void check(String what, boolean ok) {
+        checks++;
+        if (!ok) {
+            failures++;
+            System.out.println(kind + ": " + what);
+        }
+    }
+}
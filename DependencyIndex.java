@@ -0,0 +1,121 @@
+import java.util.*;
+
+/**
+ * DependencyIndex
+ *
+ * Records, during name analysis, which global declarations each top-level
+ * declaration depends on.  The SymTable reports every lookup that reaches
+ * the global scope or the struct list, including lookups that find
+ * nothing and the checks addDecl/addStruct make for duplicates.  For each
+ * top-level declaration the index keeps the first binding it saw for each
+ * name.
+ *
+ * From that it answers two questions:
+ *   getDependents(sym)   which declarations use a global Sym
+ *   isUpToDate(decl, t)  would decl see the same globals if analyzed
+ *                        again against table t (so its results still hold)
+ *
+ * D is the type of the declarations (DeclNode); it is a parameter only so
+ * that SymTable does not depend on ast.java.
+ */
+class DependencyIndex<D> {
+    // global Sym (variable, function or struct) -> declarations using it
+    private HashMap<Sym, Set<D>> users = new HashMap<Sym, Set<D>>();
+    // top-level declaration -> the global bindings it saw
+    private HashMap<D, Uses> uses = new HashMap<D, Uses>();
+    // the declaration being analyzed, if any
+    private D current;
+    private Uses currentUses;
+
+    /**
+     * Starts recording for a top-level declaration (null to stop).  Any
+     * earlier record for it is replaced.
+     */
+    public void enter(D decl) {
+        current = decl;
+        currentUses = null;
+        if (decl != null) {
+            forget(decl);
+            currentUses = new Uses();
+            uses.put(decl, currentUses);
+        }
+    }
+
+    /**
+     * Called by SymTable: the current declaration looked up name in the
+     * global scope (or, if isStruct, in the struct list) and found sym,
+     * which may be null.
+     */
+    public void observe(String name, Sym sym, boolean isStruct) {
+        if (currentUses == null)
+            return;
+        HashMap<String, Sym> seen = isStruct ? currentUses.structs : currentUses.vars;
+        if (seen.containsKey(name))
+            return;     // later lookups may find the declaration's own Sym
+        seen.put(name, sym);
+        if (sym != null) {
+            Set<D> set = users.get(sym);
+            if (set == null)
+                users.put(sym, set = new LinkedHashSet<D>());
+            set.add(current);
+        }
+    }
+
+    /**
+     * Returns the top-level declarations that use the given global Sym.
+     */
+    public Set<D> getDependents(Sym sym) {
+        Set<D> set = users.get(sym);
+        if (set == null)
+            return Collections.emptySet();
+        return Collections.unmodifiableSet(set);
+    }
+
+    /**
+     * Returns true if every global binding decl saw during its last
+     * analysis is still the binding in globals, i.e. analyzing it again
+     * in front of these globals would give the same result.  Returns
+     * false for a declaration that was never recorded.
+     */
+    public boolean isUpToDate(D decl, SymTable globals) {
+        Uses u = uses.get(decl);
+        if (u == null)
+            return false;
+        HashMap<String, Sym> scope = globals.getGlobalScope();
+        for (Map.Entry<String, Sym> e : u.vars.entrySet())
+            if (scope.get(e.getKey()) != e.getValue())
+                return false;
+        HashMap<String, Sym> structs = globals.getStructDefinedList();
+        for (Map.Entry<String, Sym> e : u.structs.entrySet())
+            if (structs.get(e.getKey()) != e.getValue())
+                return false;
+        return true;
+    }
+
+    /**
+     * Drops everything recorded for decl.
+     */
+    public void forget(D decl) {
+        Uses u = uses.remove(decl);
+        if (u == null)
+            return;
+        for (Sym sym : u.vars.values())
+            dropUser(sym, decl);
+        for (Sym sym : u.structs.values())
+            dropUser(sym, decl);
+    }
+
+    private void dropUser(Sym sym, D decl) {
+        if (sym == null)
+            return;
+        Set<D> set = users.get(sym);
+        if (set != null && set.remove(decl) && set.isEmpty())
+            users.remove(sym);
+    }
+
+    // what one declaration saw; a null value records a failed lookup
+    private static class Uses {
+        HashMap<String, Sym> vars = new HashMap<String, Sym>();
+        HashMap<String, Sym> structs = new HashMap<String, Sym>();
+    }
+}
@@ -1,10 +1,34 @@
+import java.util.*;
+
 /**
  * ErrMsg
  *
  * This class is used to generate warning and fatal error messages.
+ *
+ * Messages are formatted into a buffer that is written to System.err
+ * when it grows past FLUSH_SIZE, when flush() is called (P4 does at the
+ * end of each phase, and before anything else goes to stdout or stderr),
+ * and at exit.  What reaches System.err is what printing each message
+ * with println would write.
  */
 class ErrMsg {
     public static boolean nameAnalyzerFail = false;
+    // number of messages generated so far, warnings included
+    static int numMessages = 0;
+    // when non-null, messages are added to this list instead of printed
+    // (IncrementalAnalyzer keeps them per declaration and replays them)
+    static List<Diagnostic> collector = null;
+
+    // messages not yet written to System.err
+    private static final int FLUSH_SIZE = 1 << 16;
+    private static final String NEWLINE = System.lineSeparator();
+    private static StringBuilder buffer = new StringBuilder(FLUSH_SIZE + 256);
+
+    static {
+        // whatever is left when the program exits (System.exit included)
+        Runtime.getRuntime().addShutdownHook(new Thread(ErrMsg::flush));
+    }
+
     /**
      * Generates a fatal error message.
      * @param lineNum line number for error location
@@ -13,7 +37,12 @@ class ErrMsg {
      */
     static void fatal(int lineNum, int charNum, String msg) {
         nameAnalyzerFail = true;
-        System.err.println(lineNum + ":" + charNum + " ***ERROR*** " + msg);
+        numMessages++;
+        if (collector != null) {
+            collector.add(new Diagnostic(lineNum, charNum, true, msg));
+            return;
+        }
+        add(lineNum, charNum, " ***ERROR*** ", msg);
     }
 
     /**
@@ -23,6 +52,67 @@ class ErrMsg {
      * @param msg associated message for warning
      */
     static void warn(int lineNum, int charNum, String msg) {
-        System.err.println(lineNum + ":" + charNum + " ***WARNING*** " + msg);
+        numMessages++;
+        if (collector != null) {
+            collector.add(new Diagnostic(lineNum, charNum, false, msg));
+            return;
+        }
+        add(lineNum, charNum, " ***WARNING*** ", msg);
+    }
+
+    /**
+     * Generates a line of text that is not about one position (it goes
+     * out in order with the messages).
+     */
+    static void note(String text) {
+        numMessages++;
+        buffer.append(text).append(NEWLINE);
+    }
+
+    /**
+     * Writes the buffered messages to System.err.
+     */
+    static void flush() {
+        if (buffer.length() == 0)
+            return;
+        System.err.append(buffer);
+        System.err.flush();
+        buffer.setLength(0);
+    }
+
+    private static void add(int lineNum, int charNum, String kind, String msg) {
+        buffer.append(lineNum).append(':').append(charNum)
+              .append(kind).append(msg).append(NEWLINE);
+        if (buffer.length() >= FLUSH_SIZE)
+            flush();
+    }
+}
+
+/**
+ * Diagnostic
+ *
+ * One message collected by ErrMsg instead of being printed.
+ */
+class Diagnostic {
+    int lineNum;
+    int charNum;
+    boolean fatal;
+    String msg;
+
+    Diagnostic(int lineNum, int charNum, boolean fatal, String msg) {
+        this.lineNum = lineNum;
+        this.charNum = charNum;
+        this.fatal = fatal;
+        this.msg = msg;
+    }
+
+    /**
+     * Formats the message the way ErrMsg prints it.
+     * @param lineOffset added to the line number (unless it is 0, which
+     *                   stands for the end of the file)
+     */
+    String format(int lineOffset) {
+        return (lineNum == 0 ? 0 : lineNum + lineOffset) + ":" + charNum
+            + (fatal ? " ***ERROR*** " : " ***WARNING*** ") + msg;
     }
 }
@@ -0,0 +1,76 @@
+/**
+ * ErrorLimits
+ *
+ * The error limits of one name analysis (P4 --max-errors and
+ * --max-error-decls) and what they left out.  It travels with the
+ * SymTable (see SymTable.getErrorLimits), and the nodes report their
+ * errors through fatal() here, so only name analysis errors count:
+ * lexer and syntax errors go straight to ErrMsg and are always shown.
+ * Nothing in it is shared, so analyses in one JVM (P4 --watch,
+ * IncrementalAnalyzer, the test harnesses) do not see each other's
+ * counts.
+ */
+class ErrorLimits {
+    // stop after this many errors (the rest of the declaration the last
+    // one is in is still analyzed, but its errors are only counted) or
+    // after this many top-level declarations with errors
+    private final int maxErrors;
+    private final int maxErrorDecls;
+    private int numErrors = 0;
+    // errors counted but not printed, and declarations left unanalyzed
+    private int numSuppressed = 0;
+    private int numDeclsSkipped = 0;
+
+    // no limits
+    ErrorLimits() {
+        this(Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    ErrorLimits(int maxErrors, int maxErrorDecls) {
+        this.maxErrors = maxErrors;
+        this.maxErrorDecls = maxErrorDecls;
+    }
+
+    /**
+     * Generates a fatal name analysis error, unless the limit has been
+     * passed (then it is only counted, and still fails the analysis).
+     */
+    void fatal(int lineNum, int charNum, String msg) {
+        numErrors++;
+        if (numErrors > maxErrors) {
+            numSuppressed++;
+            ErrMsg.nameAnalyzerFail = true;
+            return;
+        }
+        ErrMsg.fatal(lineNum, charNum, msg);
+    }
+
+    // number of errors so far, suppressed ones included
+    int getNumErrors() {
+        return numErrors;
+    }
+
+    /**
+     * Returns whether analysis should stop before the next top-level
+     * declaration, given how many so far had errors.
+     */
+    boolean limitReached(int declsWithErrors) {
+        return numErrors >= maxErrors || declsWithErrors >= maxErrorDecls;
+    }
+
+    // n declarations were left unanalyzed
+    void skipDecls(int n) {
+        numDeclsSkipped += n;
+    }
+
+    /**
+     * Generates, if the limits left anything out, a message saying how
+     * much.
+     */
+    void summarize() {
+        if (numSuppressed == 0 && numDeclsSkipped == 0)
+            return;
+        ErrMsg.note("too many errors: " + numSuppressed + " more not shown, "
+                    + numDeclsSkipped + " declarations not analyzed");
+    }
+}
@@ -0,0 +1,209 @@
+import java.util.*;
+import java_cup.runtime.Symbol;
+
+/**
+ * ExpParser
+ *
+ * Parses expressions by precedence climbing, for LrDriver: when the LR
+ * parse reaches a state that expects an exp and the next token can start
+ * one, the driver lets ExpParser read the whole expression from the same
+ * token stream instead of shifting and reducing it operator by operator.
+ *
+ * The trees are those b.cup builds with its precedence declarations:
+ *
+ *   - binary operators, lowest first: ||, &&, the comparisons, + and -,
+ *     * and /; all associate left except the comparisons, which do not
+ *     associate (a < b < c is a syntax error at the second <)
+ *   - ! applies to a primary (or another unary): !a + b is (!a) + b
+ *   - unary minus has the precedence of binary minus, so its operand
+ *     takes * and / but stops at + and -: -a * b + c is (-(a * b)) + c
+ *   - loc = exp is a primary whose right side extends as far as it can:
+ *     a + b = c + d is a + (b = (c + d))
+ *
+ * A syntax error is reported through the driver at the same token the LR
+ * parse would report it at.
+ */
+class ExpParser {
+    // binary operator levels; a level above every binary operator is
+    // reached only by unary operators and primaries
+    private static final int OR = 1;
+    private static final int AND = 2;
+    private static final int COMPARE = 3;
+    private static final int ADD = 4;
+    private static final int MULTIPLY = 5;
+    private static final int UNARY = 6;
+
+    private LrDriver in;
+
+    ExpParser(LrDriver in) {
+        this.in = in;
+    }
+
+    /**
+     * Returns whether an expression can start with a token of type s.
+     */
+    static boolean startsExp(int s) {
+        switch (s) {
+            case sym.ID:
+            case sym.INTLITERAL:
+            case sym.STRINGLITERAL:
+            case sym.TRUE:
+            case sym.FALSE:
+            case sym.LPAREN:
+            case sym.NOT:
+            case sym.MINUS:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Parses the longest expression starting at the current token.
+     */
+    ExpNode parseExp() throws Exception {
+        return parseExp(OR);
+    }
+
+    // an expression whose binary operators are all at level min or above
+    private ExpNode parseExp(int min) throws Exception {
+        ExpNode left = parseUnary();
+        for (;;) {
+            int op = in.token().sym;
+            int level = level(op);
+            if (level < min)
+                return left;
+            in.advance();
+            left = binary(op, left, parseExp(level + 1));
+            if (level == COMPARE && level(in.token().sym) == COMPARE)
+                in.syntaxError();
+        }
+    }
+
+    private ExpNode parseUnary() throws Exception {
+        switch (in.token().sym) {
+            case sym.NOT:
+                in.advance();
+                return new NotNode(parseExp(UNARY));
+            case sym.MINUS:
+                in.advance();
+                return new UnaryMinusNode(parseExp(MULTIPLY));
+            default:
+                return parsePrimary();
+        }
+    }
+
+    private ExpNode parsePrimary() throws Exception {
+        Symbol t = in.token();
+        switch (t.sym) {
+            case sym.INTLITERAL: {
+                in.advance();
+                IntLitTokenVal i = (IntLitTokenVal)t.value;
+                return new IntLitNode(i.linenum, i.charnum, i.intVal);
+            }
+            case sym.STRINGLITERAL: {
+                in.advance();
+                StrLitTokenVal s = (StrLitTokenVal)t.value;
+                return new StringLitNode(s.linenum, s.charnum, s.strVal);
+            }
+            case sym.TRUE: {
+                in.advance();
+                TokenVal v = (TokenVal)t.value;
+                return new TrueNode(v.linenum, v.charnum);
+            }
+            case sym.FALSE: {
+                in.advance();
+                TokenVal v = (TokenVal)t.value;
+                return new FalseNode(v.linenum, v.charnum);
+            }
+            case sym.LPAREN: {
+                in.advance();
+                ExpNode e = parseExp(OR);
+                expect(sym.RPAREN);
+                return e;
+            }
+            case sym.ID: {
+                IdNode id = in.id();
+                if (in.token().sym == sym.LPAREN)
+                    return parseCall(id);
+                ExpNode loc = id;
+                while (in.token().sym == sym.DOT) {
+                    in.advance();
+                    loc = new DotAccessExpNode(loc, in.id());
+                }
+                if (in.token().sym != sym.ASSIGN)
+                    return loc;
+                in.advance();
+                return new AssignNode(loc, parseExp(OR));
+            }
+            default:
+                in.syntaxError();
+                return null;
+        }
+    }
+
+    // id ( ) or id ( exp, ... ), from the (
+    private ExpNode parseCall(IdNode id) throws Exception {
+        in.advance();
+        if (in.token().sym == sym.RPAREN) {
+            in.advance();
+            return new CallExpNode(id);
+        }
+        LinkedList<ExpNode> args = new LinkedList<ExpNode>();
+        args.addLast(parseExp(OR));
+        while (in.token().sym == sym.COMMA) {
+            in.advance();
+            args.addLast(parseExp(OR));
+        }
+        expect(sym.RPAREN);
+        return new CallExpNode(id, new ExpListNode(args));
+    }
+
+    private void expect(int s) throws Exception {
+        if (in.token().sym != s)
+            in.syntaxError();
+        in.advance();
+    }
+
+    // the level of a binary operator, 0 for other tokens
+    private static int level(int s) {
+        switch (s) {
+            case sym.OR:
+                return OR;
+            case sym.AND:
+                return AND;
+            case sym.EQUALS:
+            case sym.NOTEQUALS:
+            case sym.LESS:
+            case sym.GREATER:
+            case sym.LESSEQ:
+            case sym.GREATEREQ:
+                return COMPARE;
+            case sym.PLUS:
+            case sym.MINUS:
+                return ADD;
+            case sym.TIMES:
+            case sym.DIVIDE:
+                return MULTIPLY;
+            default:
+                return 0;
+        }
+    }
+
+    private static ExpNode binary(int op, ExpNode e1, ExpNode e2) {
+        switch (op) {
+            case sym.OR:        return new OrNode(e1, e2);
+            case sym.AND:       return new AndNode(e1, e2);
+            case sym.EQUALS:    return new EqualsNode(e1, e2);
+            case sym.NOTEQUALS: return new NotEqualsNode(e1, e2);
+            case sym.LESS:      return new LessNode(e1, e2);
+            case sym.GREATER:   return new GreaterNode(e1, e2);
+            case sym.LESSEQ:    return new LessEqNode(e1, e2);
+            case sym.GREATEREQ: return new GreaterEqNode(e1, e2);
+            case sym.PLUS:      return new PlusNode(e1, e2);
+            case sym.MINUS:     return new MinusNode(e1, e2);
+            case sym.TIMES:     return new TimesNode(e1, e2);
+            default:            return new DivideNode(e1, e2);
+        }
+    }
+}
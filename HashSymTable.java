@@ -0,0 +1,181 @@
+import java.util.*;
+
+/**
+ * HashSymTable
+ *
+ * A SymTable that finds any name with one hash probe, however many
+ * scopes are open.  The globals are a HashMap of their own (the one
+ * getGlobalScope returns); every declaration in an inner scope is a
+ * Binding in a second HashMap, which maps a name to its innermost
+ * binding, and that binding links to the one it shadows.  Each scope
+ * keeps the names it declared, so removeScope restores the shadowed
+ * bindings of just those names.
+ *
+ * It gives the same results as ListSymTable.  Its stats count one scope
+ * walked per map probed (the inner bindings, then the globals).
+ */
+public class HashSymTable extends BaseSymTable {
+    private HashMap<String, Sym> globals;
+    // name -> innermost binding in a scope other than the global one
+    private HashMap<String, Binding> locals;
+    // names[d] holds the names declared in scope d (1 is the scope just
+    // inside the globals); the lists are reused
+    private ArrayList<ArrayList<String>> names;
+    private int numScopes;
+
+    public HashSymTable() {
+        globals = new HashMap<String, Sym>();
+        locals = new HashMap<String, Binding>();
+        names = new ArrayList<ArrayList<String>>();
+        names.add(null);                // the globals keep their own names
+        numScopes = 1;
+    }
+
+    protected int numScopes() {
+        return numScopes;
+    }
+
+    public HashMap<String, Sym> getGlobalScope() {
+        if (numScopes == 0)
+            return null;
+        return globals;
+    }
+
+    public Sym tryAddDecl(String name, Sym sym) {
+        if (numScopes == 0)
+            throw new IndexOutOfBoundsException("no scope");
+        if (SymTableStats.ENABLED)
+            stats.addDecl++;
+        int depth = numScopes - 1;
+        Binding inner = null;
+        Sym old;
+        if (depth == 0) {
+            old = globals.get(name);
+            if (deps != null)
+                deps.observe(name, old, false);
+        } else {
+            inner = locals.get(name);
+            old = (inner != null && inner.depth == depth) ? inner.sym : null;
+        }
+        if (deps != null)
+            deps.observe(name, structDefinedList.get(name), true);
+        if (old == null)
+            old = structDefinedList.get(name);
+        if (old != null)
+            return old;
+        if (depth == 0) {
+            globals.put(name, sym);
+        } else {
+            locals.put(name, new Binding(sym, depth, inner));
+            names.get(depth).add(name);
+        }
+        return null;
+    }
+
+    public void addScope() {
+        if (SymTableStats.ENABLED)
+            stats.addScope++;
+        if (numScopes == 0) {
+            // a new global scope
+            globals = new HashMap<String, Sym>();
+        } else if (numScopes == names.size()) {
+            names.add(new ArrayList<String>());
+        }
+        numScopes++;
+    }
+
+    public Sym lookupLocal(String name) {
+        if (numScopes == 0)
+            return null;
+        Sym sym;
+        if (numScopes == 1) {
+            sym = globals.get(name);
+        } else {
+            Binding b = locals.get(name);
+            sym = (b != null && b.depth == numScopes - 1) ? b.sym : null;
+        }
+        if (SymTableStats.ENABLED) {
+            stats.lookupLocal++;
+            stats.atDepth(numScopes);
+            if (sym == null)
+                stats.lookupLocalMisses++;
+        }
+        return sym;
+    }
+
+    public Sym lookupGlobal(String name) {
+        if (SymTableStats.ENABLED) {
+            stats.lookupGlobal++;
+            stats.atDepth(numScopes);
+        }
+        if (numScopes == 0) {
+            if (SymTableStats.ENABLED)
+                stats.lookupGlobalMisses++;
+            return null;
+        }
+        if (numScopes > 1) {
+            if (SymTableStats.ENABLED)
+                stats.scopesWalked++;
+            Binding b = locals.get(name);
+            if (b != null)
+                return b.sym;
+        }
+        if (SymTableStats.ENABLED)
+            stats.scopesWalked++;
+        Sym sym = globals.get(name);
+        if (SymTableStats.ENABLED && sym == null)
+            stats.lookupGlobalMisses++;
+        if (deps != null)
+            deps.observe(name, sym, false);
+        return sym;
+    }
+
+    public boolean tryRemoveScope() {
+        if (numScopes == 0)
+            return false;
+        numScopes--;
+        if (numScopes == 0)
+            return true;        // the globals; addScope starts new ones
+        ArrayList<String> declared = names.get(numScopes);
+        for (String name : declared) {
+            Binding shadowed = locals.get(name).shadowed;
+            if (shadowed == null)
+                locals.remove(name);
+            else
+                locals.put(name, shadowed);
+        }
+        declared.clear();
+        return true;
+    }
+
+    public void print() {
+        System.out.print("\n=== Sym Table ===\n");
+        for (int d = numScopes - 1; d > 0; d--) {
+            HashMap<String, Sym> scope = new HashMap<String, Sym>();
+            for (String name : names.get(d)) {
+                Binding b = locals.get(name);
+                while (b.depth != d)
+                    b = b.shadowed;
+                scope.put(name, b.sym);
+            }
+            System.out.println(scope.toString());
+        }
+        if (numScopes > 0)
+            System.out.println(globals.toString());
+        System.out.println();
+    }
+
+    // a declaration in scope depth, and the binding of the same name in
+    // an outer scope (not the globals) that it shadows
+    private static class Binding {
+        final Sym sym;
+        final int depth;
+        final Binding shadowed;
+
+        Binding(Sym sym, int depth, Binding shadowed) {
+            this.sym = sym;
+            this.depth = depth;
+            this.shadowed = shadowed;
+        }
+    }
+}
@@ -0,0 +1,401 @@
+import java.io.*;
+import java.util.*;
+import java_cup.runtime.*;
+
+/**
+ * IncrementalAnalyzer
+ *
+ * Re-analyzes a b program after an edit without starting from scratch.
+ * The source is split into its top-level declarations by brace matching,
+ * and each declaration is lexed and parsed on its own.  A declaration
+ * whose text is unchanged keeps its AST.  It also keeps its name analysis
+ * results (its Resolution and its error messages) as long as every global
+ * name it looked up still has the binding it had then; a DependencyIndex
+ * recorded during analysis keeps track of those lookups.
+ *
+ * To keep that true across edits, a re-analyzed declaration that declares
+ * a variable or function of the same type as before keeps its old Sym.
+ * Editing the body of a function is then only re-parsing and re-analyzing
+ * that function.
+ *
+ * Each update() still does work in proportion to the whole source: it
+ * splits all of it again, hashes the text of every declaration to find
+ * the unchanged ones, and walks them in order to rebuild the globals
+ * (a put per exported name, and a check of each recorded lookup).  Only
+ * lexing, parsing and name analysis, the expensive part, are limited to
+ * what changed.  Keeping the split between edits would need the edit's
+ * position, which update() is not given.
+ *
+ * Unlike P4, a syntax error does not stop the program.  It is reported,
+ * and the declaration it occurs in is left out.
+ *
+ * Usage: call update() with the whole source after every edit, then
+ * printDiagnostics() and, if !failed(), unparse().
+ */
+class IncrementalAnalyzer {
+    // the top-level declarations, in source order
+    private List<Chunk> chunks = new ArrayList<Chunk>();
+    // the globals each declaration looked up when it was last analyzed
+    private DependencyIndex<DeclNode> deps = new DependencyIndex<DeclNode>();
+    // work done by the last update()
+    private int numParsed;
+    private int numAnalyzed;
+
+    /**
+     * Brings the analysis up to date with the given source text.
+     */
+    public void update(String source) {
+        // previous declarations by text, and what they declared
+        HashMap<Chunk, ArrayDeque<Chunk>> old = new HashMap<Chunk, ArrayDeque<Chunk>>();
+        HashMap<String, Sym> oldSyms = new HashMap<String, Sym>();
+        for (Chunk c : chunks) {
+            ArrayDeque<Chunk> same = old.get(c);
+            if (same == null)
+                old.put(c, same = new ArrayDeque<Chunk>());
+            same.add(c);
+            for (Export e : c.exports)
+                if (!e.isStruct)
+                    oldSyms.put(e.name, e.sym);
+        }
+
+        List<Chunk> fresh = split(source);
+        SymTable globals = new ListSymTable();
+        globals.setDependencyIndex(deps);
+        numParsed = 0;
+        numAnalyzed = 0;
+        for (Chunk c : fresh) {
+            ArrayDeque<Chunk> same = old.get(c);
+            Chunk prev = (same == null) ? null : same.poll();
+            if (prev != null) {
+                c.ast = prev.ast;
+                c.parseErrors = prev.parseErrors;
+            } else {
+                parse(c);
+                numParsed++;
+            }
+
+            if (prev != null && isUpToDate(prev, globals)) {
+                c.links = prev.links;
+                c.nameErrors = prev.nameErrors;
+                c.exports = prev.exports;
+                for (Export e : c.exports) {
+                    if (e.isStruct)
+                        globals.getStructDefinedList().put(e.name, e.sym);
+                    else
+                        globals.getGlobalScope().put(e.name, e.sym);
+                }
+            } else {
+                analyze(c, globals, oldSyms);
+                numAnalyzed++;
+            }
+        }
+
+        // declarations that were edited or deleted
+        for (ArrayDeque<Chunk> gone : old.values())
+            for (Chunk c : gone)
+                if (c.ast != null)
+                    for (DeclNode d : c.ast.getDeclList().getDecls())
+                        deps.forget(d);
+        chunks = fresh;
+    }
+
+    /**
+     * Returns the dependency index of the current program.
+     */
+    public DependencyIndex<DeclNode> getDependencyIndex() {
+        return deps;
+    }
+
+    /**
+     * Returns true if the last update() found any error.
+     */
+    public boolean failed() {
+        for (Chunk c : chunks) {
+            for (Diagnostic d : c.parseErrors)
+                if (d.fatal)
+                    return true;
+            for (Diagnostic d : c.nameErrors)
+                if (d.fatal)
+                    return true;
+        }
+        return false;
+    }
+
+    /**
+     * Prints the messages of the last update() in the order P4 would:
+     * lexer and parser messages first, then name analysis messages.
+     */
+    public void printDiagnostics(PrintStream err) {
+        for (Chunk c : chunks)
+            for (Diagnostic d : c.parseErrors)
+                err.println(d.format(c.startLine - 1));
+        for (Chunk c : chunks)
+            for (Diagnostic d : c.nameErrors)
+                err.println(d.format(c.startLine - 1));
+    }
+
+    /**
+     * Unparses the program, with identifiers linked to their Syms.
+     */
+    public void unparse(UnparseWriter p) {
+        for (Chunk c : chunks) {
+            if (c.ast == null)
+                continue;
+            p.setResolution(c.links);
+            c.ast.unparse(p, 0);
+        }
+        p.setResolution(null);
+    }
+
+    // number of declarations parsed by the last update()
+    public int getNumParsed() {
+        return numParsed;
+    }
+
+    // number of declarations name-analyzed by the last update()
+    public int getNumAnalyzed() {
+        return numAnalyzed;
+    }
+
+    // lex and parse one declaration; the text is indented so that the
+    // columns come out as in the whole file (lines are offset later)
+    private void parse(Chunk c) {
+        List<Diagnostic> errors = new ArrayList<Diagnostic>();
+        ErrMsg.collector = errors;
+        CharNum.num = 1;
+        try {
+            String text = " ".repeat(c.startCol - 1) + c.text;
+            parser P = new ChunkParser(new Yylex(new StringReader(text)));
+            c.ast = (ProgramNode)P.parse().value;
+        } catch (Exception ex) {
+            c.ast = null;
+        } finally {
+            ErrMsg.collector = null;
+        }
+        c.parseErrors = errors;
+    }
+
+    // name-analyze one declaration against the globals declared before it
+    private void analyze(Chunk c, SymTable globals, HashMap<String, Sym> oldSyms) {
+        List<Diagnostic> errors = new ArrayList<Diagnostic>();
+        c.exports = new ArrayList<Export>(1);
+        c.links = null;
+        c.nameErrors = errors;
+        if (c.ast == null)
+            return;
+
+        HashMap<String, Sym> scope = globals.getGlobalScope();
+        HashMap<String, Sym> structs = globals.getStructDefinedList();
+        List<DeclNode> decls = c.ast.getDeclList().getDecls();
+        Sym[] before = new Sym[decls.size()];
+        int i = 0;
+        for (DeclNode d : decls) {
+            String name = d.getId().getID();
+            before[i++] = (d instanceof StructDeclNode) ? structs.get(name)
+                                                        : scope.get(name);
+        }
+
+        ErrMsg.collector = errors;
+        try {
+            c.links = c.ast.nameAnalyzer(globals);
+        } finally {
+            ErrMsg.collector = null;
+        }
+
+        i = 0;
+        for (DeclNode d : decls) {
+            String name = d.getId().getID();
+            boolean isStruct = d instanceof StructDeclNode;
+            Sym sym = isStruct ? structs.get(name) : scope.get(name);
+            if (before[i++] != null || sym == null)
+                continue;   // nothing declared (error) or declared earlier
+            if (!isStruct && !sym.checkIsStruct()) {
+                // same kind and type as before: keep the old Sym so that
+                // later declarations linked to it stay valid
+                Sym was = oldSyms.get(name);
+                if (was != null && was.getClass() == sym.getClass()
+                        && was.getType() == sym.getType()) {
+                    scope.put(name, was);
+                    sym = was;
+                }
+            }
+            c.exports.add(new Export(name, sym, isStruct));
+        }
+    }
+
+    // true if analyzing c again in front of globals would change nothing
+    private boolean isUpToDate(Chunk c, SymTable globals) {
+        if (c.ast == null)
+            return true;
+        // a name it declared is now declared above it, so it is a
+        // duplicate; putting its exports would hide that (a variable or
+        // function also looked its name up, which the index recorded, but
+        // a struct checks the struct list without a lookup)
+        for (Export e : c.exports) {
+            HashMap<String, Sym> names = e.isStruct ? globals.getStructDefinedList()
+                                                    : globals.getGlobalScope();
+            if (names.get(e.name) != null)
+                return false;
+        }
+        for (DeclNode d : c.ast.getDeclList().getDecls())
+            if (!deps.isUpToDate(d, globals))
+                return false;
+        return true;
+    }
+
+    /**
+     * Splits source text into top-level declarations.  A declaration ends
+     * with a ';' or a '}' outside any braces; comments and string literals
+     * are skipped the way the scanner skips them.  Each piece starts right
+     * after the previous one, so leading blanks and comments belong to the
+     * declaration that follows them.
+     */
+    static List<Chunk> split(String src) {
+        List<Chunk> out = new ArrayList<Chunk>();
+        int n = src.length();
+        int start = 0, startLine = 1, startCol = 1;
+        int line = 1, col = 1, depth = 0;
+        boolean tokens = false;
+        int i = 0;
+        while (i < n) {
+            char ch = src.charAt(i);
+            if (ch == '\n') {
+                line++;
+                col = 1;
+                i++;
+                continue;
+            }
+            if (ch == '#' || (ch == '/' && i + 1 < n && src.charAt(i + 1) == '/')) {
+                while (i < n && src.charAt(i) != '\n')
+                    i++;
+                continue;
+            }
+            if (ch == '"') {
+                tokens = true;
+                i++;
+                col++;
+                while (i < n && src.charAt(i) != '\n') {
+                    char d = src.charAt(i++);
+                    col++;
+                    if (d == '"')
+                        break;
+                    if (d == '\\' && i < n && src.charAt(i) != '\n') {
+                        i++;
+                        col++;
+                    }
+                }
+                continue;
+            }
+
+            boolean end = false;
+            if (ch == '{') {
+                depth++;
+            } else if (ch == '}') {
+                if (depth > 0)
+                    depth--;
+                end = depth == 0;
+            } else if (ch == ';') {
+                end = depth == 0;
+            }
+            if (ch != ' ' && ch != '\t')
+                tokens = true;
+            i++;
+            col++;
+            if (end) {
+                out.add(new Chunk(src.substring(start, i), startLine, startCol));
+                start = i;
+                startLine = line;
+                startCol = col;
+                tokens = false;
+            }
+        }
+        if (tokens)
+            out.add(new Chunk(src.substring(start), startLine, startCol));
+        return out;
+    }
+
+    /**
+     * Chunk
+     *
+     * One top-level declaration: its text and position (which identify
+     * it) and the results of parsing and analyzing it.
+     */
+    static class Chunk {
+        String text;
+        int startLine;
+        int startCol;
+        private int hash;
+
+        ProgramNode ast;             // null after a syntax error
+        List<Diagnostic> parseErrors;
+        Resolution links;
+        List<Diagnostic> nameErrors;
+        List<Export> exports;        // the globals it declared
+
+        Chunk(String text, int startLine, int startCol) {
+            this.text = text;
+            this.startLine = startLine;
+            this.startCol = startCol;
+            this.hash = text.hashCode() * 31 + startCol;
+        }
+
+        // the line does not take part: moving a declaration up or down
+        // does not change its AST, only where its messages point
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Chunk))
+                return false;
+            Chunk other = (Chunk)o;
+            return hash == other.hash && startCol == other.startCol
+                && text.equals(other.text);
+        }
+    }
+
+    /**
+     * Export
+     *
+     * A global variable, function or struct added by a declaration.
+     */
+    static class Export {
+        String name;
+        Sym sym;
+        boolean isStruct;
+
+        Export(String name, Sym sym, boolean isStruct) {
+            this.name = name;
+            this.sym = sym;
+            this.isStruct = isStruct;
+        }
+    }
+
+    /**
+     * ChunkParser
+     *
+     * The b parser, but a syntax error is reported through ErrMsg and
+     * ends the parse of this declaration instead of the program.
+     */
+    static class ChunkParser extends parser {
+        ChunkParser(java_cup.runtime.Scanner s) {
+            super(s);
+        }
+
+        public void syntax_error(Symbol currToken) {
+            if (currToken.value == null) {
+                ErrMsg.fatal(0,0, "Syntax error at end of file");
+            }
+            else {
+                ErrMsg.fatal(((TokenVal)currToken.value).linenum,
+                             ((TokenVal)currToken.value).charnum,
+                             "Syntax error");
+            }
+        }
+
+        public void unrecovered_syntax_error(Symbol currToken) throws Exception {
+            done_parsing();
+            throw new Exception("Syntax error");
+        }
+    }
+}
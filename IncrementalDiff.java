@@ -0,0 +1,305 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.regex.*;
+
+/**
+ * IncrementalDiff
+ *
+ * A differential test of IncrementalAnalyzer.  For each given file it
+ * keeps one IncrementalAnalyzer and applies a sequence of random edits to
+ * the top-level declarations:
+ *
+ *   - deleting, duplicating or moving a declaration
+ *   - renaming the name a declaration declares, or that name everywhere
+ *   - changing the type of a declaration between int and bool
+ *   - adding a statement that uses some global to a function body
+ *
+ * After each edit (and before the first) it runs update() on the new
+ * source and compares the messages, nameAnalyzerFail and the unparsed
+ * program with those of a fresh P4 run on the same source, in a new JVM.
+ *
+ * Before the files, it runs the fixed edits in EDITS, each of which has
+ * to give the message it lists as well.
+ *
+ *     java IncrementalDiff [--seed=N] [--edits=N] FILE ...
+ *
+ * It prints the edits on which they disagree and exits with status 1 if
+ * there are any.
+ */
+class IncrementalDiff {
+    // the identifiers in the header of a declaration (up to its '(', '{'
+    // or ';'); the last one is the name it declares
+    private static final Pattern IDENT = Pattern.compile("[a-zA-Z][a-zA-Z0-9_]*");
+    private static final Pattern TYPE = Pattern.compile("\\b(int|bool)\\b");
+    private static final Pattern FUNCTION = Pattern.compile("\\)\\s*\\{");
+
+    // a source, an edit of it, and a message the edit has to give: a
+    // declaration inserted above an unchanged one that declares the same
+    // name makes the unchanged one a duplicate (what is inserted ends in
+    // the column the declaration before it does, so the unchanged one
+    // keeps its text and column and is not parsed again)
+    private static final String[][] EDITS = {
+        { "bool y;\nint x;\nvoid f() {\n    x = 1;\n}\n",
+          "bool y;\nbool x;\nint x;\nvoid f() {\n    x = 1;\n}\n",
+          "3:5 ***ERROR*** Multiply declared identifier" },
+        { "int y;\nvoid g() {\n}\nint h;\n",
+          "int y;\nint g;\nvoid g() {\n}\nint h;\n",
+          "3:6 ***ERROR*** Multiply declared identifier" },
+        { "struct T {\n    int c;\n}\nstruct S {\n    int a;\n}\nstruct S s;\n",
+          "struct T {\n    int c;\n}\nstruct S {\n    bool b;\n}\nstruct S {\n    int a;\n}\nstruct S s;\n",
+          "7:8 ***ERROR*** Multiply declared identifier" },
+    };
+
+    private Random random;
+    private int cases = 0;
+    private int failures = 0;
+
+    IncrementalDiff(long seed) {
+        random = new Random(seed);
+    }
+
+    public static void main(String[] args) throws Exception {
+        long seed = 1;
+        int edits = 10;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("--"); i++) {
+            String arg = args[i];
+            int eq = arg.indexOf('=');
+            String name = (eq < 0) ? arg : arg.substring(0, eq);
+            try {
+                if (name.equals("--seed") && eq > 0)
+                    seed = Long.parseLong(arg.substring(eq + 1));
+                else if (name.equals("--edits") && eq > 0)
+                    edits = Integer.parseInt(arg.substring(eq + 1));
+                else
+                    throw new NumberFormatException();
+            } catch (NumberFormatException ex) {
+                System.err.println("usage: java IncrementalDiff [--seed=N] [--edits=N] FILE ...");
+                System.exit(-1);
+            }
+        }
+        IncrementalDiff diff = new IncrementalDiff(seed);
+        for (String[] edit : EDITS)
+            diff.checkEdit(edit[0], edit[1], edit[2]);
+        for (; i < args.length; i++)
+            diff.checkFile(args[i], new String(Files.readAllBytes(Paths.get(args[i])), "UTF-8"), edits);
+        System.out.println("IncrementalDiff: " + diff.cases + " cases, "
+                           + diff.failures + " disagreements");
+        System.exit(diff.failures == 0 ? 0 : 1);
+    }
+
+    // edits source n times, checking the analyzer after each edit
+    private void checkFile(String name, String source, int n) throws Exception {
+        IncrementalAnalyzer analyzer = new IncrementalAnalyzer();
+        StringBuilder log = new StringBuilder(name);
+        for (int k = 0; ; k++) {
+            cases++;
+            String why = compare(analyzer, source);
+            if (why != null) {
+                fail(log.toString(), why);
+                return;
+            }
+            if (k == n)
+                return;
+            List<String> decls = new ArrayList<String>();
+            for (IncrementalAnalyzer.Chunk c : IncrementalAnalyzer.split(source))
+                decls.add(c.text);
+            int length = 0;
+            for (String d : decls)
+                length += d.length();
+            String rest = source.substring(length);
+            log.append(", ").append(edit(decls));
+            StringBuilder sb = new StringBuilder();
+            for (String d : decls)
+                sb.append(d);
+            source = sb.append(rest).toString();
+        }
+    }
+
+    // updates with before, then after; after has to give message, as P4 does
+    private void checkEdit(String before, String after, String message) throws Exception {
+        IncrementalAnalyzer analyzer = new IncrementalAnalyzer();
+        cases++;
+        String why = compare(analyzer, before);
+        if (why == null) {
+            cases++;
+            why = compare(analyzer, after);
+        }
+        if (why == null) {
+            ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+            PrintStream err = new PrintStream(diagnostics, true, "UTF-8");
+            analyzer.printDiagnostics(err);
+            err.close();
+            if (!diagnostics.toString("UTF-8").contains(message))
+                why = "no \"" + message + "\"";
+        }
+        if (why != null)
+            fail("edit of:\n" + before + "into:\n" + after, why);
+    }
+
+    // one random edit of the declarations; returns what it did
+    private String edit(List<String> decls) {
+        int i = random.nextInt(decls.size());
+        String decl = decls.get(i);
+        String code = withoutComments(decl);
+        Matcher header = IDENT.matcher(code);
+        header.region(0, headerEnd(code));
+        int start = -1, end = -1;
+        while (header.find()) {
+            start = header.start();
+            end = header.end();
+        }
+        String declared = (start < 0) ? null : decl.substring(start, end);
+        switch (random.nextInt(7)) {
+            case 0:
+                if (decls.size() > 1) {
+                    decls.remove(i);
+                    return "delete " + declared;
+                }
+                // fall through
+            case 1:
+                decls.add(random.nextInt(decls.size() + 1), decl);
+                return "duplicate " + declared;
+            case 2:
+                decls.remove(i);
+                decls.add(random.nextInt(decls.size() + 1), decl);
+                return "move " + declared;
+            case 3:
+                if (declared == null)
+                    break;
+                decls.set(i, decl.substring(0, end) + "x" + decl.substring(end));
+                return "rename " + declared;
+            case 4:
+                if (declared == null)
+                    break;
+                for (int j = 0; j < decls.size(); j++)
+                    decls.set(j, decls.get(j).replaceAll("\\b" + declared + "\\b", declared + "x"));
+                return "rename " + declared + " everywhere";
+            case 5: {
+                Matcher type = TYPE.matcher(code);
+                type.region(0, headerEnd(code));
+                if (!type.find())
+                    break;
+                String to = type.group().equals("int") ? "bool" : "int";
+                decls.set(i, decl.substring(0, type.start()) + to + decl.substring(type.end()));
+                return "retype " + declared;
+            }
+            default:
+                break;
+        }
+        // add a statement to a function
+        for (int j = 0; j < decls.size(); j++) {
+            String f = decls.get((i + j) % decls.size());
+            if (!FUNCTION.matcher(withoutComments(f)).find())
+                continue;
+            String used = randomName(decls);
+            int close = f.lastIndexOf('}');
+            decls.set((i + j) % decls.size(),
+                      f.substring(0, close) + "print << " + used + ";\n" + f.substring(close));
+            return "use " + used;
+        }
+        return "nothing";
+    }
+
+    // the name some declaration declares, or an undeclared one
+    private String randomName(List<String> decls) {
+        String code = withoutComments(decls.get(random.nextInt(decls.size())));
+        Matcher m = IDENT.matcher(code);
+        m.region(0, headerEnd(code));
+        String name = "undeclared";
+        while (m.find())
+            name = m.group();
+        return name;
+    }
+
+    // where the header of a declaration ends
+    private static int headerEnd(String code) {
+        int end = code.length();
+        for (char c : new char[] { '(', '{', ';' }) {
+            int at = code.indexOf(c);
+            if (at >= 0 && at < end)
+                end = at;
+        }
+        return end;
+    }
+
+    // the text with comments blanked out (so offsets stay the same)
+    private static String withoutComments(String text) {
+        StringBuilder sb = new StringBuilder(text);
+        int i = 0;
+        while (i < sb.length()) {
+            char ch = sb.charAt(i);
+            if (ch == '"') {
+                // a string literal; never in a header
+                i = text.indexOf('"', i + 1);
+                if (i < 0)
+                    break;
+                i++;
+            } else if (ch == '#' || (ch == '/' && i + 1 < sb.length() && sb.charAt(i + 1) == '/')) {
+                while (i < sb.length() && sb.charAt(i) != '\n')
+                    sb.setCharAt(i++, ' ');
+            } else {
+                i++;
+            }
+        }
+        return sb.toString();
+    }
+
+    // runs update() and P4 on source; returns how they differ, or null
+    private static String compare(IncrementalAnalyzer analyzer, String source) throws Exception {
+        analyzer.update(source);
+        ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+        PrintStream err = new PrintStream(diagnostics, true, "UTF-8");
+        analyzer.printDiagnostics(err);
+        err.close();
+
+        Path in = Files.createTempFile("incrementaldiff", ".b");
+        Path out = Files.createTempFile("incrementaldiff", ".out");
+        Path p4Out = Files.createTempFile("incrementaldiff", ".stdout");
+        Path p4Err = Files.createTempFile("incrementaldiff", ".stderr");
+        try {
+            Files.write(in, source.getBytes("UTF-8"));
+            ProcessBuilder pb = new ProcessBuilder(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-Dfile.encoding=UTF-8",
+                "-cp", System.getProperty("java.class.path"),
+                "P4", in.toString(), out.toString());
+            // otherwise the JVM announces them on stderr
+            pb.environment().remove("JAVA_TOOL_OPTIONS");
+            pb.redirectOutput(p4Out.toFile());
+            pb.redirectError(p4Err.toFile());
+            pb.start().waitFor();
+
+            String stdout = new String(Files.readAllBytes(p4Out), "UTF-8");
+            if (!stdout.contains("program parsed correctly."))
+                return "P4 did not parse it:\n" + source;
+            String expected = new String(Files.readAllBytes(p4Err), "UTF-8");
+            String actual = diagnostics.toString("UTF-8");
+            if (!actual.equals(expected))
+                return "messages differ:\nP4:\n" + expected + "update():\n" + actual;
+            boolean failed = stdout.contains("nameAnalyzerFail");
+            if (analyzer.failed() != failed)
+                return "P4 " + (failed ? "failed" : "succeeded") + ", update() did not";
+            if (failed)
+                return null;
+            byte[] unparsed = Files.readAllBytes(out);
+            UnparseWriter p = new UnparseWriter(out.toString());
+            analyzer.unparse(p);
+            p.close();
+            if (!Arrays.equals(unparsed, Files.readAllBytes(out)))
+                return "unparsed programs differ";
+            return null;
+        } finally {
+            Files.delete(in);
+            Files.delete(out);
+            Files.delete(p4Out);
+            Files.delete(p4Err);
+        }
+    }
+
+    private void fail(String name, String why) {
+        failures++;
+        System.out.println(name + ": " + why);
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.*;
+
+/**
+ * ListSymTable
+ *
+ * The original SymTable: a list of HashMaps, one per scope, the innermost
+ * first.  lookupGlobal searches them in order, so its cost grows with the
+ * number of scopes open.
+ */
+public class ListSymTable extends BaseSymTable {
+    private List<HashMap<String, Sym>> list;
+    
+    public ListSymTable() {
+        list = new LinkedList<HashMap<String, Sym>>();
+        list.add(new HashMap<String, Sym>());
+    }
+
+    protected int numScopes() {
+        return list.size();
+    }
+
+    // the outermost scope, i.e. the global declarations
+    public HashMap<String, Sym> getGlobalScope(){
+        if (list.isEmpty())
+            return null;
+        return list.get(list.size() - 1);
+    }
+
+    public Sym tryAddDecl(String name, Sym sym) {
+        HashMap<String, Sym> symTab = list.get(0);
+        if (SymTableStats.ENABLED)
+            stats.addDecl++;
+        if (deps != null) {
+            if (list.size() == 1)
+                deps.observe(name, symTab.get(name), false);
+            deps.observe(name, structDefinedList.get(name), true);
+        }
+        Sym old = symTab.get(name);
+        if (old == null)
+            old = structDefinedList.get(name);
+        if (old != null)
+            return old;
+        symTab.put(name, sym);
+        return null;
+    }
+    
+    public void addScope() {
+        if (SymTableStats.ENABLED)
+            stats.addScope++;
+        list.add(0, new HashMap<String, Sym>());
+    }
+    
+    public Sym lookupLocal(String name) {
+        if (list.isEmpty())
+            return null;
+        
+        HashMap<String, Sym> symTab = list.get(0); 
+        if (SymTableStats.ENABLED) {
+            stats.lookupLocal++;
+            stats.atDepth(list.size());
+            if (symTab.get(name) == null)
+                stats.lookupLocalMisses++;
+        }
+        return symTab.get(name);
+    }
+    
+    public Sym lookupGlobal(String name) {
+        if (SymTableStats.ENABLED) {
+            stats.lookupGlobal++;
+            stats.atDepth(list.size());
+        }
+        if (list.isEmpty()) {
+            if (SymTableStats.ENABLED)
+                stats.lookupGlobalMisses++;
+            return null;
+        }
+        
+        for (HashMap<String, Sym> symTab : list) {
+            if (SymTableStats.ENABLED)
+                stats.scopesWalked++;
+            Sym sym = symTab.get(name);
+            if (sym != null) {
+                if (deps != null && symTab == getGlobalScope())
+                    deps.observe(name, sym, false);
+                return sym;
+            }
+        }
+        if (SymTableStats.ENABLED)
+            stats.lookupGlobalMisses++;
+        if (deps != null)
+            deps.observe(name, null, false);
+        return null;
+    }
+    
+    public boolean tryRemoveScope() {
+        if (list.isEmpty())
+            return false;
+        list.remove(0);
+        return true;
+    }
+    
+    public void print() {
+        System.out.print("\n=== Sym Table ===\n");
+        for (HashMap<String, Sym> symTab : list) {
+            System.out.println(symTab.toString());
+        }
+        System.out.println();
+    }
+}
@@ -0,0 +1,557 @@
+import java.util.*;
+import java_cup.runtime.Symbol;
+
+/**
+ * LrDriver
+ *
+ * A parse driver for the b grammar that runs the LR tables CUP built from
+ * b.cup (parser.action_table() etc.) without CUP's runtime.  CUP's
+ * lr_parser keeps a Stack of Symbols and makes a new Symbol for every
+ * reduction; here the parse states are an int[] and the semantic values
+ * an Object[], so a reduction only allocates the AST node its action
+ * builds.  The tables are expanded once into dense arrays indexed by
+ * state and symbol, and shared by all drivers.
+ *
+ * reduce() repeats the actions of b.cup, numbered as CUP numbers the
+ * productions (in grammar order, 0 being $START ::= program EOF), and
+ * builds the same ProgramNode the CUP parser does.  When b.cup changes,
+ * reduce() and RHS must change with it.  The build runs ActionCheck,
+ * which compares each case of reduce() with the action CUP generated for
+ * that production in parser.java, and the tables are checked against RHS
+ * when first loaded, so a driver that is out of date fails the build or
+ * fails instead of building a wrong tree.
+ *
+ * With setPrecedenceClimbing(true), expressions are parsed by ExpParser:
+ * in a state with a goto on exp, when the next token can start an
+ * expression, the driver reads the whole expression with ExpParser and
+ * takes the goto, skipping a shift and reduce per operand and operator.
+ *
+ * With setLazyBodies(true), function bodies are not parsed: the driver
+ * skips from the { of a body to its matching } and builds a FnBodyNode
+ * that keeps those tokens and parses them when it is first used.  Every
+ * ID token of a body becomes one IdNode, so the IdNode numbers the body
+ * will use are counted and set aside when it is skipped, and the tree is
+ * the same once every body is parsed.  A syntax error in a body is only
+ * found then, while the tree is being used, so it does not end the
+ * program: it is reported through ErrMsg and the body is left empty.
+ */
+class LrDriver {
+    // fnBody ::= LCURLY varDeclList stmtList RCURLY
+    private static final int BODY = 20;
+
+    // the length of the right-hand side of each production
+    private static final int[] RHS = {
+        2,                      // $START ::= program EOF
+        1,                      // program
+        2, 0,                   // declList
+        1, 1, 1,                // decl
+        2, 0,                   // varDeclList
+        3, 4,                   // varDecl
+        4,                      // fnDecl
+        5,                      // structDecl
+        2, 1,                   // structBody
+        2, 3,                   // formals
+        1, 3,                   // formalsList
+        2,                      // formalDecl
+        4,                      // fnBody
+        2, 0,                   // stmtList
+        2, 3, 3, 4, 4, 6, 11, 6, 6, 3, 2, 2,    // stmt
+        3,                      // assignExp
+        1, 3, 3, 3, 3, 2, 3, 3, 3, 3, 3, 3, 3, 3, 2, 1,    // exp
+        1, 1, 1, 1, 1, 3, 1,    // term
+        3, 4,                   // fncall
+        1, 3,                   // actualList
+        1, 1, 1,                // type
+        1, 3,                   // loc
+        1                       // id
+    };
+
+    private Tables t = Tables.INSTANCE;
+    private java_cup.runtime.Scanner scanner;
+    private parser reporter;    // for its syntax_error
+    private ExpParser exps;     // null unless climbing
+    private boolean lazyBodies = false;
+    private Symbol token;       // the lookahead
+
+    // what the actions of b.cup keep between reductions (its action code,
+    // so that the actions read the same here)
+    private int nextNodeId = 0;
+    private int numTokens = 0;
+    private List<Integer> declTokens = new ArrayList<Integer>();
+    private int declStart = 0;
+
+    private int[] declTokens() {
+        int[] a = new int[declTokens.size()];
+        for (int i = 0; i < a.length; i++)
+            a[i] = declTokens.get(i);
+        return a;
+    }
+
+    public LrDriver(java_cup.runtime.Scanner s) {
+        this(s, new parser(s));
+    }
+
+    // syntax errors go to reporter.syntax_error
+    public LrDriver(java_cup.runtime.Scanner s, parser reporter) {
+        scanner = s;
+        this.reporter = reporter;
+    }
+
+    /**
+     * Parses expressions with ExpParser (on) or with the LR tables (off,
+     * the default).  Both build the same trees.
+     */
+    public void setPrecedenceClimbing(boolean on) {
+        exps = on ? new ExpParser(this) : null;
+    }
+
+    /**
+     * Leaves function bodies to be parsed when first used (on) or parses
+     * them with the rest (off, the default).
+     */
+    public void setLazyBodies(boolean on) {
+        lazyBodies = on;
+    }
+
+    /**
+     * Parses the whole input and returns its AST.  A syntax error is
+     * reported by parser.syntax_error, which ends the program (or, if it
+     * returns, parse throws an Exception).
+     */
+    public ProgramNode parse() throws Exception {
+        token = scan();
+        return (ProgramNode)run(0, 0);
+    }
+
+    // parses from state start until production goal is reduced with
+    // nothing under it, and returns its value (for goal 0, the program)
+    private Object run(int start, int goal) throws Exception {
+        int[] states = new int[64];
+        Object[] values = new Object[64];
+        int top = 0;
+        states[0] = start;
+        for (;;) {
+            if (lazyBodies && token.sym == sym.LCURLY && t.bodyGoto[states[top]] >= 0) {
+                FnBodyNode body = skipBody(states[top]);
+                if (++top == states.length) {
+                    states = Arrays.copyOf(states, 2 * top);
+                    values = Arrays.copyOf(values, 2 * top);
+                }
+                states[top] = t.bodyGoto[states[top - 1]];
+                values[top] = body;
+                continue;
+            }
+            if (exps != null && t.expGoto[states[top]] >= 0
+                && ExpParser.startsExp(token.sym)) {
+                ExpNode e = exps.parseExp();
+                if (++top == states.length) {
+                    states = Arrays.copyOf(states, 2 * top);
+                    values = Arrays.copyOf(values, 2 * top);
+                }
+                states[top] = t.expGoto[states[top - 1]];
+                values[top] = e;
+                continue;
+            }
+            int act = (token.sym < t.numTerminals)
+                ? t.action[states[top] * t.numTerminals + token.sym] : 0;
+            if (act > 0) {                      // shift
+                if (++top == states.length) {
+                    states = Arrays.copyOf(states, 2 * top);
+                    values = Arrays.copyOf(values, 2 * top);
+                }
+                states[top] = act - 1;
+                values[top] = token.value;
+                if (token.sym != sym.EOF)
+                    token = scan();
+            } else if (act < 0) {               // reduce
+                int prod = -act - 1;
+                if (prod == 0)
+                    return values[top - 1];
+                Object value = reduce(prod, values, top);
+                top -= RHS[prod];
+                if (prod == goal && top == 0)
+                    return value;
+                int next = t.gotos[states[top] * t.numNonterminals + t.lhs[prod]];
+                if (++top == states.length) {
+                    states = Arrays.copyOf(states, 2 * top);
+                    values = Arrays.copyOf(values, 2 * top);
+                }
+                states[top] = next;
+                values[top] = value;
+            } else {
+                syntaxError();
+            }
+        }
+    }
+
+    // from the { of a function body (the lookahead, in state) to the
+    // token after its }: the tokens go to a FnBodyNode that parses them
+    // later, from state, with the IdNode numbers set aside for it here
+    private FnBodyNode skipBody(int state) throws Exception {
+        List<Symbol> tokens = new ArrayList<Symbol>();
+        int firstId = nextNodeId;
+        int depth = 0;
+        do {
+            if (token.sym == sym.EOF)
+                syntaxError();
+            if (token.sym == sym.LCURLY)
+                depth++;
+            else if (token.sym == sym.RCURLY)
+                depth--;
+            else if (token.sym == sym.ID)
+                nextNodeId++;
+            tokens.add(token);
+            token = scan();
+        } while (depth > 0);
+        // the token after the body decides the reduction to fnBody
+        tokens.add(token);
+        return new FnBodyNode(new DeferredBody(tokens.toArray(new Symbol[tokens.size()]),
+                                               state, firstId, exps != null));
+    }
+
+    /**
+     * The tokens of a function body, parsed by a driver of their own when
+     * the FnBodyNode is first used.  A syntax error is reported through
+     * ErrMsg (see BodyReporter) and gives an empty body.
+     */
+    private static class DeferredBody implements FnBodyNode.Deferred {
+        private Symbol[] tokens;
+        private int state;
+        private int firstId;
+        private boolean climbing;
+
+        DeferredBody(Symbol[] tokens, int state, int firstId, boolean climbing) {
+            this.tokens = tokens;
+            this.state = state;
+            this.firstId = firstId;
+            this.climbing = climbing;
+        }
+
+        public FnBodyNode parse() {
+            final int[] next = { 0 };
+            // past the end, the last token (the one after the body) again
+            LrDriver driver = new LrDriver(
+                () -> tokens[Math.min(next[0]++, tokens.length - 1)], new BodyReporter());
+            driver.setPrecedenceClimbing(climbing);
+            driver.nextNodeId = firstId;
+            try {
+                driver.token = driver.scan();
+                return (FnBodyNode)driver.run(state, BODY);
+            } catch (Exception ex) {
+                // reported by BodyReporter
+                return new FnBodyNode(DeclListNode.EMPTY, StmtListNode.EMPTY);
+            }
+        }
+    }
+
+    /**
+     * BodyReporter
+     *
+     * The b parser's syntax_error without the System.exit: the error is
+     * reported through ErrMsg (so it counts as a fatal error), and
+     * syntaxError() then ends the parse of the body.
+     */
+    private static class BodyReporter extends parser {
+        public void syntax_error(Symbol currToken) {
+            if (currToken.value == null) {
+                ErrMsg.fatal(0,0, "Syntax error at end of file");
+            }
+            else {
+                ErrMsg.fatal(((TokenVal)currToken.value).linenum,
+                             ((TokenVal)currToken.value).charnum,
+                             "Syntax error");
+            }
+        }
+    }
+
+    // for ExpParser: the lookahead, moving past it, reading an ID as an
+    // IdNode (numbered like the id action does) and reporting an error at
+    // the lookahead
+
+    Symbol token() {
+        return token;
+    }
+
+    void advance() throws Exception {
+        token = scan();
+    }
+
+    IdNode id() throws Exception {
+        if (token.sym != sym.ID)
+            syntaxError();
+        IdTokenVal i = (IdTokenVal)token.value;
+        advance();
+        return new IdNode(i.linenum, i.charnum, i.idVal, nextNodeId++);
+    }
+
+    void syntaxError() throws Exception {
+        reporter.syntax_error(token);
+        throw new Exception("Can't recover from previous error(s)");
+    }
+
+    // the next token, as CUP's lr_parser.scan gives it
+    private Symbol scan() throws Exception {
+        numTokens++;
+        Symbol s = scanner.next_token();
+        return (s != null) ? s : new Symbol(sym.EOF);
+    }
+
+    // the action of production prod, whose right-hand side is on top of
+    // values (its last symbol at values[top])
+    @SuppressWarnings("unchecked")
+    private Object reduce(int prod, Object[] values, int top) {
+        int b = top - RHS[prod] + 1;    // the first symbol
+        switch (prod) {
+            case 1: // program ::= declList
+                return new ProgramNode(new DeclListNode((List<DeclNode>)values[b]),
+                                       nextNodeId, declTokens());
+            case 2: { // declList ::= declList decl
+                List<DeclNode> dl = ASTnode.addLast((List<DeclNode>)values[b],
+                                                    (DeclNode)values[b + 1]);
+                declTokens.add(numTokens - declStart);
+                declStart = numTokens;
+                return dl;
+            }
+            case 3: // declList ::=
+                declStart = numTokens;
+                return Collections.emptyList();
+            case 4: // decl ::= varDecl
+            case 5: // decl ::= fnDecl
+            case 6: // decl ::= structDecl
+                return values[b];
+            case 7: // varDeclList ::= varDeclList varDecl
+                return ASTnode.addLast((List<VarDeclNode>)values[b], (VarDeclNode)values[b + 1]);
+            case 8: // varDeclList ::=
+                return Collections.emptyList();
+            case 9: // varDecl ::= type id SEMICOLON
+                return new VarDeclNode((TypeNode)values[b], (IdNode)values[b + 1],
+                                       VarDeclNode.NOT_STRUCT);
+            case 10: // varDecl ::= STRUCT id id SEMICOLON
+                return new VarDeclNode(new StructNode((IdNode)values[b + 1]),
+                                       (IdNode)values[b + 2], 0);
+            case 11: // fnDecl ::= type id formals fnBody
+                return new FnDeclNode((TypeNode)values[b], (IdNode)values[b + 1],
+                                      new FormalsListNode((List<FormalDeclNode>)values[b + 2]),
+                                      (FnBodyNode)values[b + 3]);
+            case 12: // structDecl ::= STRUCT id LCURLY structBody RCURLY
+                return new StructDeclNode((IdNode)values[b + 1],
+                                          new DeclListNode((List<DeclNode>)values[b + 3]));
+            case 13: { // structBody ::= structBody varDecl
+                LinkedList<VarDeclNode> sb = (LinkedList<VarDeclNode>)values[b];
+                sb.addLast((VarDeclNode)values[b + 1]);
+                return sb;
+            }
+            case 14: { // structBody ::= varDecl
+                LinkedList<VarDeclNode> list = new LinkedList<VarDeclNode>();
+                list.addLast((VarDeclNode)values[b]);
+                return list;
+            }
+            case 15: // formals ::= LPAREN RPAREN
+                return Collections.emptyList();
+            case 16: // formals ::= LPAREN formalsList RPAREN
+                return values[b + 1];
+            case 17: { // formalsList ::= formalDecl
+                LinkedList<FormalDeclNode> list = new LinkedList<FormalDeclNode>();
+                list.addLast((FormalDeclNode)values[b]);
+                return list;
+            }
+            case 18: { // formalsList ::= formalDecl COMMA formalsList
+                LinkedList<FormalDeclNode> fl = (LinkedList<FormalDeclNode>)values[b + 2];
+                fl.addFirst((FormalDeclNode)values[b]);
+                return fl;
+            }
+            case 19: // formalDecl ::= type id
+                return new FormalDeclNode((TypeNode)values[b], (IdNode)values[b + 1]);
+            case 20: // fnBody ::= LCURLY varDeclList stmtList RCURLY
+                return new FnBodyNode(DeclListNode.of((List<DeclNode>)values[b + 1]),
+                                      StmtListNode.of((List<StmtNode>)values[b + 2]));
+            case 21: // stmtList ::= stmtList stmt
+                return ASTnode.addLast((List<StmtNode>)values[b], (StmtNode)values[b + 1]);
+            case 22: // stmtList ::=
+                return Collections.emptyList();
+            case 23: // stmt ::= assignExp SEMICOLON
+                return new AssignStmtNode((AssignNode)values[b]);
+            case 24: // stmt ::= PLUSPLUS loc SEMICOLON
+                return new PreIncStmtNode((ExpNode)values[b + 1]);
+            case 25: // stmt ::= MINUSMINUS loc SEMICOLON
+                return new PreDecStmtNode((ExpNode)values[b + 1]);
+            case 26: // stmt ::= RECEIVE READ loc SEMICOLON
+                return new ReceiveStmtNode((ExpNode)values[b + 2]);
+            case 27: // stmt ::= PRINT WRITE exp SEMICOLON
+                return new PrintStmtNode((ExpNode)values[b + 2]);
+            case 28: // stmt ::= IF exp LCURLY varDeclList stmtList RCURLY
+                return new IfStmtNode((ExpNode)values[b + 1],
+                                      DeclListNode.of((List<DeclNode>)values[b + 3]),
+                                      StmtListNode.of((List<StmtNode>)values[b + 4]));
+            case 29: // stmt ::= IF exp LCURLY varDeclList stmtList RCURLY ELSE LCURLY varDeclList stmtList RCURLY
+                return new IfElseStmtNode((ExpNode)values[b + 1],
+                                          DeclListNode.of((List<DeclNode>)values[b + 3]),
+                                          StmtListNode.of((List<StmtNode>)values[b + 4]),
+                                          DeclListNode.of((List<DeclNode>)values[b + 8]),
+                                          StmtListNode.of((List<StmtNode>)values[b + 9]));
+            case 30: // stmt ::= WHILE exp LCURLY varDeclList stmtList RCURLY
+                return new WhileStmtNode((ExpNode)values[b + 1],
+                                         DeclListNode.of((List<DeclNode>)values[b + 3]),
+                                         StmtListNode.of((List<StmtNode>)values[b + 4]));
+            case 31: // stmt ::= REPEAT exp LCURLY varDeclList stmtList RCURLY
+                return new RepeatStmtNode((ExpNode)values[b + 1],
+                                          DeclListNode.of((List<DeclNode>)values[b + 3]),
+                                          StmtListNode.of((List<StmtNode>)values[b + 4]));
+            case 32: // stmt ::= RETURN exp SEMICOLON
+                return new ReturnStmtNode((ExpNode)values[b + 1]);
+            case 33: // stmt ::= RETURN SEMICOLON
+                return new ReturnStmtNode(null);
+            case 34: // stmt ::= fncall SEMICOLON
+                return new CallStmtNode((CallExpNode)values[b]);
+            case 35: // assignExp ::= loc ASSIGN exp
+                return new AssignNode((ExpNode)values[b], (ExpNode)values[b + 2]);
+            case 36: // exp ::= assignExp
+                return values[b];
+            case 37: // exp ::= exp PLUS exp
+                return new PlusNode((ExpNode)values[b], (ExpNode)values[b + 2]);
+            case 38: // exp ::= exp MINUS exp
+                return new MinusNode((ExpNode)values[b], (ExpNode)values[b + 2]);
+            case 39: // exp ::= exp TIMES exp
+                return new TimesNode((ExpNode)values[b], (ExpNode)values[b + 2]);
+            case 40: // exp ::= exp DIVIDE exp
+                return new DivideNode((ExpNode)values[b], (ExpNode)values[b + 2]);
+            case 41: // exp ::= NOT exp
+                return new NotNode((ExpNode)values[b + 1]);
+            case 42: // exp ::= exp AND exp
+                return new AndNode((ExpNode)values[b], (ExpNode)values[b + 2]);
+            case 43: // exp ::= exp OR exp
+                return new OrNode((ExpNode)values[b], (ExpNode)values[b + 2]);
+            case 44: // exp ::= exp EQUALS exp
+                return new EqualsNode((ExpNode)values[b], (ExpNode)values[b + 2]);
+            case 45: // exp ::= exp NOTEQUALS exp
+                return new NotEqualsNode((ExpNode)values[b], (ExpNode)values[b + 2]);
+            case 46: // exp ::= exp LESS exp
+                return new LessNode((ExpNode)values[b], (ExpNode)values[b + 2]);
+            case 47: // exp ::= exp GREATER exp
+                return new GreaterNode((ExpNode)values[b], (ExpNode)values[b + 2]);
+            case 48: // exp ::= exp LESSEQ exp
+                return new LessEqNode((ExpNode)values[b], (ExpNode)values[b + 2]);
+            case 49: // exp ::= exp GREATEREQ exp
+                return new GreaterEqNode((ExpNode)values[b], (ExpNode)values[b + 2]);
+            case 50: // exp ::= MINUS exp
+                return new UnaryMinusNode((ExpNode)values[b + 1]);
+            case 51: // exp ::= term
+            case 52: // term ::= loc
+                return values[b];
+            case 53: { // term ::= INTLITERAL
+                IntLitTokenVal i = (IntLitTokenVal)values[b];
+                return new IntLitNode(i.linenum, i.charnum, i.intVal);
+            }
+            case 54: { // term ::= STRINGLITERAL
+                StrLitTokenVal s = (StrLitTokenVal)values[b];
+                return new StringLitNode(s.linenum, s.charnum, s.strVal);
+            }
+            case 55: { // term ::= TRUE
+                TokenVal tv = (TokenVal)values[b];
+                return new TrueNode(tv.linenum, tv.charnum);
+            }
+            case 56: { // term ::= FALSE
+                TokenVal f = (TokenVal)values[b];
+                return new FalseNode(f.linenum, f.charnum);
+            }
+            case 57: // term ::= LPAREN exp RPAREN
+                return values[b + 1];
+            case 58: // term ::= fncall
+                return values[b];
+            case 59: // fncall ::= id LPAREN RPAREN
+                return new CallExpNode((IdNode)values[b]);
+            case 60: // fncall ::= id LPAREN actualList RPAREN
+                return new CallExpNode((IdNode)values[b],
+                                       new ExpListNode((List<ExpNode>)values[b + 2]));
+            case 61: { // actualList ::= exp
+                LinkedList<ExpNode> list = new LinkedList<ExpNode>();
+                list.addLast((ExpNode)values[b]);
+                return list;
+            }
+            case 62: { // actualList ::= actualList COMMA exp
+                LinkedList<ExpNode> al = (LinkedList<ExpNode>)values[b];
+                al.addLast((ExpNode)values[b + 2]);
+                return al;
+            }
+            case 63: // type ::= INT
+                return new IntNode();
+            case 64: // type ::= BOOL
+                return new BoolNode();
+            case 65: // type ::= VOID
+                return new VoidNode();
+            case 66: // loc ::= id
+                return values[b];
+            case 67: // loc ::= loc DOT id
+                return new DotAccessExpNode((ExpNode)values[b], (IdNode)values[b + 2]);
+            case 68: { // id ::= ID
+                IdTokenVal i = (IdTokenVal)values[b];
+                return new IdNode(i.linenum, i.charnum, i.idVal, nextNodeId++);
+            }
+            default:
+                throw new IllegalStateException("no action for production " + prod);
+        }
+    }
+
+    /**
+     * The parser's tables, expanded: action[state * numTerminals + terminal]
+     * is CUP's encoded action (shift to s is s + 1, reduce by p is -(p + 1),
+     * error is 0) and gotos[state * numNonterminals + lhs] the state after
+     * a reduction.  expGoto[state] and bodyGoto[state] are the states after
+     * an exp and after a fnBody, or -1.
+     */
+    private static class Tables {
+        static final Tables INSTANCE = new Tables(new parser());
+
+        int numTerminals;
+        int numNonterminals;
+        int[] action;
+        int[] gotos;
+        int[] lhs;              // the left-hand side of each production
+        int[] expGoto;
+        int[] bodyGoto;
+
+        Tables(parser p) {
+            short[][] prods = p.production_table();
+            short[][] actions = p.action_table();
+            short[][] reduces = p.reduce_table();
+            if (prods.length != RHS.length)
+                throw new IllegalStateException("LrDriver has " + RHS.length
+                    + " productions, the parser " + prods.length + "; update it from b.cup");
+            lhs = new int[prods.length];
+            for (int i = 0; i < prods.length; i++) {
+                if (prods[i][1] != RHS[i])
+                    throw new IllegalStateException("production " + i
+                        + " of the parser does not match LrDriver; update it from b.cup");
+                lhs[i] = prods[i][0];
+                numNonterminals = Math.max(numNonterminals, lhs[i] + 1);
+            }
+            // each row is (symbol, entry) pairs; an action row ends with
+            // (-1, default), a reduce row with (-1, -1)
+            for (short[] row : actions)
+                for (int i = 0; i + 2 < row.length; i += 2)
+                    numTerminals = Math.max(numTerminals, row[i] + 1);
+            action = new int[actions.length * numTerminals];
+            for (int s = 0; s < actions.length; s++) {
+                short[] row = actions[s];
+                Arrays.fill(action, s * numTerminals, (s + 1) * numTerminals,
+                            row[row.length - 1]);
+                for (int i = 0; i + 2 < row.length; i += 2)
+                    action[s * numTerminals + row[i]] = row[i + 1];
+            }
+            gotos = new int[reduces.length * numNonterminals];
+            Arrays.fill(gotos, -1);
+            for (int s = 0; s < reduces.length; s++) {
+                short[] row = reduces[s];
+                for (int i = 0; i + 1 < row.length && row[i] >= 0; i += 2)
+                    gotos[s * numNonterminals + row[i]] = row[i + 1];
+            }
+            int exp = lhs[36];  // exp ::= assignExp
+            expGoto = new int[reduces.length];
+            for (int s = 0; s < reduces.length; s++)
+                expGoto[s] = gotos[s * numNonterminals + exp];
+            bodyGoto = new int[reduces.length];
+            for (int s = 0; s < reduces.length; s++)
+                bodyGoto[s] = gotos[s * numNonterminals + lhs[BODY]];
+        }
+    }
+}
@@ -1,4 +1,7 @@
 import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
 import java_cup.runtime.*;
 
 /**
@@ -8,62 +11,432 @@ import java_cup.runtime.*;
  *    1. the file to be parsed
  *    2. the output file into which the AST built by the parser should be
  *       unparsed
+ *
+ * They may be preceded by options:
+ *    --cache-dir=DIR        reuse the results of earlier runs on the same
+ *                           input, kept in DIR (see AnalysisCache)
+ *    --cache-max-bytes=N    size limit of the cache directory
+ *    --import-summary=FILE  declare the globals of another file, from the
+ *                           summary written for it (may be repeated)
+ *    --export-summary=FILE  if name analysis succeeds, write the globals
+ *                           this file declares to FILE (see SymbolSummary)
+ *    --stats[=json]         print, to stderr after everything else, the
+ *                           time and allocation of each phase and counts
+ *                           of tokens, nodes and symbol table work; lexing
+ *                           is then done before parsing, so lexer messages
+ *                           come before any syntax error
+ *    --parser=cup|lr|climb  parse with CUP's own driver (the default), with
+ *                           LrDriver, or with LrDriver and ExpParser for
+ *                           expressions; all build the same AST, but
+ *                           LrDriver repeats the actions of b.cup by hand
+ *                           (see LrDriver), so it is opt-in
+ *    --globals-only         only declare the globals (for --export-summary):
+ *                           function bodies are not analyzed (and, with
+ *                           --parser=lr or climb, are skipped by the
+ *                           parser, so their syntax is not checked and
+ *                           "program parsed correctly." only means that
+ *                           the declarations around them parsed),
+ *                           nothing is unparsed, and the cache is not used
+ *    --symtable=list|hash   keep the symbol table as a list of scopes (the
+ *                           default) or in one hash map (see SymTable);
+ *                           the results are the same
+ *    --max-errors=N         stop name analysis after N errors of its own
+ *                           (finishing the declaration the last one is
+ *                           in, without printing its further errors);
+ *                           lexer errors do not count and are all shown
+ *    --max-error-decls=N    stop name analysis after N top-level
+ *                           declarations with errors
+ *                           (with either, how many errors were not shown
+ *                           and how many declarations were not analyzed is
+ *                           printed at the end, if any were)
+ *    --watch[=MS]           keep running: analyze the file with an
+ *                           IncrementalAnalyzer, then again each time it is
+ *                           modified (checked every MS milliseconds, 500 by
+ *                           default), printing the messages and a line of
+ *                           how much was re-done and rewriting the output
+ *                           file each time; a syntax error does not stop
+ *                           it, and the other options do not apply
+ *
+ * Under a Java Flight Recorder recording, each phase and each top-level
+ * declaration slower than its threshold is recorded as a PhaseEvent or
+ * DeclEvent (see b.jfc); lexing is then also done before parsing.
  */
 
 public class P4 {
+    // defaults for the options
+    private static String cacheDir = null;
+    private static long cacheMaxBytes = 256L << 20;
+    private static List<String> importSummaries = new ArrayList<String>();
+    private static String exportSummary = null;
+    private static PhaseStats stats = null;
+    private static boolean statsJson = false;
+    private static String parserKind = "cup";
+    private static boolean globalsOnly = false;
+    private static String symTableKind = "list";
+    private static int maxErrors = Integer.MAX_VALUE;
+    private static int maxErrorDecls = Integer.MAX_VALUE;
+    private static String errorLimitArgs = "";  // as given, for the cache key
+    private static long watchInterval = 0;      // milliseconds; 0 if not --watch
+    private static PhaseEvent phase = null;     // the phase being timed
+
     public static void main(String[] args)
         throws IOException // may be thrown by the scanner
     {
         // check for command-line args
-        if (args.length != 2) {
+        int first = parseOptions(args);
+        if (args.length - first != 2) {
             System.err.println("please supply name of file to be parsed " +
 			                   "and name of file for unparsed version.");
             System.exit(-1);
         }
+        String inName = args[first];
+        String outName = args[first + 1];
+
+        if (watchInterval > 0) {
+            watch(inName, outName);
+            return;
+        }
+        analyze(inName, outName);
+        if (stats != null)
+            stats.print(System.err, statsJson);
+    }
+
+    // run P4 on one file, through the cache if there is one
+    private static void analyze(String inName, String outName) throws IOException {
+        if (cacheDir == null || globalsOnly) {
+            run(inName, outName, null, null);
+            return;
+        }
+
+        // look for an earlier run on the same input
+        byte[] input = null;
+        try {
+            input = Files.readAllBytes(Paths.get(inName));
+        } catch (IOException ex) {
+            System.err.println("File " + inName + " not found.");
+            System.exit(-1);
+        }
+        AnalysisCache cache = new AnalysisCache(cacheDir, cacheMaxBytes);
+        if (!importSummaries.isEmpty() || exportSummary != null) {
+            // the results depend on more than the input; only reuse the AST
+            run(inName, outName, cache, AnalysisCache.astKey(input));
+            return;
+        }
+        String key = AnalysisCache.key(input, errorLimitArgs);
+        AnalysisCache.Entry hit = cache.lookup(key);
+        if (hit != null) {
+            if (stats != null)
+                stats.count("cache_hit", 1L);
+            System.out.println("program parsed correctly.");
+            System.err.write(hit.diagnostics);
+            System.err.flush();
+            if (hit.failed)
+                System.out.println("nameAnalyzerFail");
+            Files.write(Paths.get(outName), hit.output);
+            return;
+        }
 
+        // miss: run as usual, recording what goes to stderr
+        PrintStream err = System.err;
+        ByteArrayOutputStream recorded = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(new TeeOutputStream(err, recorded), true));
+        try {
+            run(inName, outName, cache, AnalysisCache.astKey(input));
+        } finally {
+            ErrMsg.flush();
+            System.err.flush();
+            System.setErr(err);
+        }
+        cache.store(key, new AnalysisCache.Entry(ErrMsg.nameAnalyzerFail,
+                recorded.toByteArray(), Files.readAllBytes(Paths.get(outName))));
+    }
+
+    // --watch: analyze the file again each time it is modified, reusing
+    // what did not change; runs until killed
+    private static void watch(String inName, String outName) throws IOException {
+        Path in = Paths.get(inName);
+        IncrementalAnalyzer analyzer = new IncrementalAnalyzer();
+        FileTime analyzed = null;
+        for (;;) {
+            String source = null;
+            try {
+                FileTime modified = Files.getLastModifiedTime(in);
+                if (!modified.equals(analyzed)) {
+                    source = new String(Files.readAllBytes(in));
+                    analyzed = modified;
+                }
+            } catch (NoSuchFileException ex) {
+                // an editor may be replacing it; only missing at first is fatal
+                if (analyzed == null) {
+                    System.err.println("File " + inName + " not found.");
+                    System.exit(-1);
+                }
+            }
+            if (source != null) {
+                analyzer.update(source);
+                analyzer.printDiagnostics(System.err);
+                System.err.flush();
+                if (analyzer.failed()) {
+                    System.out.println("nameAnalyzerFail");
+                } else {
+                    UnparseWriter outFile = null;
+                    try {
+                        outFile = new UnparseWriter(outName);
+                    } catch (IOException ex) {
+                        System.err.println("File " + outName +
+                                           " could not be opened for writing.");
+                        System.exit(-1);
+                    }
+                    analyzer.unparse(outFile);
+                    outFile.close();
+                }
+                System.out.println(inName + " analyzed: " + analyzer.getNumParsed()
+                                   + " declarations parsed, " + analyzer.getNumAnalyzed()
+                                   + " analyzed");
+            }
+            try {
+                Thread.sleep(watchInterval);
+            } catch (InterruptedException ex) {
+                return;
+            }
+        }
+    }
+
+    // parse, analyze and unparse one file; with a cache, the parse is
+    // skipped if the cache has the AST under astKey, and stored if not
+    private static void run(String inName, String outName,
+                            AnalysisCache cache, String astKey) throws IOException {
         // open input file
         FileReader inFile = null;
         try {
-            inFile = new FileReader(args[0]);
+            inFile = new FileReader(inName);
         } catch (FileNotFoundException ex) {
-            System.err.println("File " + args[0] + " not found.");
+            System.err.println("File " + inName + " not found.");
             System.exit(-1);
         }
 
         // open output file
-        PrintWriter outFile = null;
+        UnparseWriter outFile = null;
         try {
-            outFile = new PrintWriter(args[1]);
-        } catch (FileNotFoundException ex) {
-            System.err.println("File " + args[1] +
+            outFile = new UnparseWriter(outName);
+        } catch (IOException ex) {
+            System.err.println("File " + outName +
                                " could not be opened for writing.");
             System.exit(-1);
         }
 
-        parser P = new parser(new Yylex(inFile));
-
-        Symbol root = null; // the parser will return a Symbol whose value
-                            // field is the translation of the root nonterminal
-                            // (i.e., of the nonterminal "program")
-
-        try {
-            root = P.parse(); // do the parse
+        ProgramNode program = null;
+        if (cache != null) {
+            beginPhase("load-ast", inName);
+            program = cache.loadAst(astKey);
+        }
+        if (program != null) {
             System.out.println ("program parsed correctly.");
-        } catch (Exception ex){
-            System.err.println("Exception occured during parse: " + ex);
-            System.exit(-1);
+        } else {
+            java_cup.runtime.Scanner scanner = new Yylex(inFile);
+            if (stats != null || new PhaseEvent(null, null).isEnabled()) {
+                // lex everything first so that the phases are timed apart
+                beginPhase("lex", inName);
+                try {
+                    TokenList tokens = new TokenList(scanner);
+                    if (stats != null)
+                        stats.count("tokens", (long)tokens.size());
+                    scanner = tokens;
+                } catch (Exception ex) {
+                    ErrMsg.flush();
+                    System.err.println("Exception occured during parse: " + ex);
+                    System.exit(-1);
+                }
+            }
+            beginPhase("parse", inName);
+            try {
+                if (parserKind.equals("cup")) {
+                    parser P = new parser(scanner);
+                    // the parser returns a Symbol whose value field is the
+                    // translation of the root nonterminal ("program")
+                    program = (ProgramNode)P.parse().value;
+                } else {
+                    LrDriver driver = new LrDriver(scanner);
+                    driver.setPrecedenceClimbing(parserKind.equals("climb"));
+                    driver.setLazyBodies(globalsOnly);
+                    program = driver.parse();
+                }
+                // the lexer's messages come before this
+                ErrMsg.flush();
+                System.out.println ("program parsed correctly.");
+            } catch (Exception ex){
+                ErrMsg.flush();
+                System.err.println("Exception occured during parse: " + ex);
+                System.exit(-1);
+            }
+            // only a clean parse can be replayed from the AST alone
+            if (cache != null && ErrMsg.numMessages == 0) {
+                beginPhase("store-ast", inName);
+                cache.storeAst(astKey, program);
+            }
         }
 
 	    // ADD NAME ANALYSIS PART HERE
         // melo
-        ((ProgramNode)root.value).nameAnalyzer();
+        if (stats != null)
+            stats.count("ast_nodes", AstWriter.countNodes(program));
+        beginPhase("name-analysis", inName);
+        SymTable globals = SymTable.create(symTableKind);
+        ErrorLimits limits = new ErrorLimits(maxErrors, maxErrorDecls);
+        globals.setErrorLimits(limits);
+        Set<String> imported = new HashSet<String>();
+        for (String summary : importSummaries) {
+            try {
+                imported.addAll(SymbolSummary.load(Paths.get(summary), globals));
+            } catch (NoSuchFileException ex) {
+                System.err.println("Summary " + summary + " not found.");
+                System.exit(-1);
+            } catch (IOException ex) {
+                System.err.println("Summary " + summary + ": " + ex.getMessage());
+                System.exit(-1);
+            }
+        }
+        Resolution links = program.nameAnalyzer(globals, globalsOnly);
+        limits.summarize();
+        if (exportSummary != null && !ErrMsg.nameAnalyzerFail)
+            SymbolSummary.write(globals, imported, Paths.get(exportSummary));
         // melo
-        if(!ErrMsg.nameAnalyzerFail)
-            ((ASTnode)root.value).unparse(outFile, 0);
+        endPhase();
+        if (stats != null) {
+            SymTableStats t = globals.getStats();
+            if (t != null) {
+                stats.count("scopes", t.getAddScope());
+                stats.count("add_decl", t.getAddDecl());
+                stats.count("lookup_local", t.getLookupLocal());
+                stats.count("lookup_global", t.getLookupGlobal());
+                stats.count("lookup_global_misses", t.getLookupGlobalMisses());
+                stats.count("lookup_struct", t.getLookupStruct());
+                stats.count("avg_probe_depth", t.getAverageScopesWalked());
+                stats.count("lookup_depth_histogram", t.getDepthHistogram());
+            }
+        }
+        beginPhase("unparse", inName);
+        if (globalsOnly) {
+            if (ErrMsg.nameAnalyzerFail)
+                System.out.println("nameAnalyzerFail");
+        }
+        else if(!ErrMsg.nameAnalyzerFail) {
+            outFile.setResolution(links);
+            program.unparse(outFile, 0);
+        }
         else
             System.out.println("nameAnalyzerFail");
         outFile.close();
+        endPhase();
+    }
+
+    // ends the current phase and starts the next, for --stats and for the
+    // JFR PhaseEvents
+    private static void beginPhase(String name, String file) {
+        endPhase();
+        if (stats != null)
+            stats.begin(name);
+        phase = new PhaseEvent(name, file);
+        phase.begin();
+    }
+
+    private static void endPhase() {
+        ErrMsg.flush();
+        if (phase == null)
+            return;
+        phase.commit();     // a no-op unless recording and over the threshold
+        phase = null;
+        if (stats != null)
+            stats.end();
+    }
+
+    // reads the leading --options; returns the index of the first argument
+    // that is not one
+    private static int parseOptions(String[] args) {
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("--"); i++) {
+            String arg = args[i];
+            int eq = arg.indexOf('=');
+            String name = (eq < 0) ? arg : arg.substring(0, eq);
+            String value = (eq < 0) ? null : arg.substring(eq + 1);
+            try {
+                if (name.equals("--cache-dir") && value != null) {
+                    cacheDir = value;
+                } else if (name.equals("--cache-max-bytes") && value != null) {
+                    cacheMaxBytes = Long.parseLong(value);
+                } else if (name.equals("--import-summary") && value != null) {
+                    importSummaries.add(value);
+                } else if (name.equals("--export-summary") && value != null) {
+                    exportSummary = value;
+                } else if (name.equals("--stats") && (value == null || value.equals("json"))) {
+                    stats = new PhaseStats();
+                    statsJson = value != null;
+                    // turn on SymTable counting (read when SymTableStats loads)
+                    System.setProperty("b.symtable.stats", "true");
+                } else if (name.equals("--parser") && value != null
+                           && (value.equals("lr") || value.equals("cup")
+                               || value.equals("climb"))) {
+                    parserKind = value;
+                } else if (name.equals("--globals-only") && value == null) {
+                    globalsOnly = true;
+                } else if (name.equals("--symtable") && value != null
+                           && (value.equals("list") || value.equals("hash"))) {
+                    symTableKind = value;
+                } else if (name.equals("--max-errors") && value != null) {
+                    maxErrors = limit(value);
+                    errorLimitArgs += arg + " ";
+                } else if (name.equals("--max-error-decls") && value != null) {
+                    maxErrorDecls = limit(value);
+                    errorLimitArgs += arg + " ";
+                } else if (name.equals("--watch")) {
+                    watchInterval = (value == null) ? 500 : limit(value);
+                } else {
+                    System.err.println("unknown option " + arg);
+                    System.exit(-1);
+                }
+            } catch (NumberFormatException ex) {
+                System.err.println("bad value in option " + arg);
+                System.exit(-1);
+            }
+        }
+        return i;
+    }
+
+    // a positive limit
+    private static int limit(String value) {
+        int n = Integer.parseInt(value);
+        if (n <= 0)
+            throw new NumberFormatException();
+        return n;
+    }
+}
+
+/**
+ * TeeOutputStream
+ *
+ * Writes everything to two streams.
+ */
+class TeeOutputStream extends OutputStream {
+    private OutputStream first;
+    private OutputStream second;
+
+    TeeOutputStream(OutputStream first, OutputStream second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    public void write(int b) throws IOException {
+        first.write(b);
+        second.write(b);
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        first.write(b, off, len);
+        second.write(b, off, len);
+    }
 
-        return;
+    public void flush() throws IOException {
+        first.flush();
+        second.flush();
     }
 }
@@ -0,0 +1,212 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java_cup.runtime.Symbol;
+
+/**
+ * ParserDiff
+ *
+ * A differential test of the ways P4 can parse (CUP's driver, LrDriver,
+ * LrDriver with ExpParser, and LrDriver with lazily parsed function
+ * bodies): each input is parsed by all of them, which must either build
+ * the same AST (compared in the binary AST format, so IdNode numbers and
+ * token counts count too) or report a syntax error at the same token.
+ * Writing the AST parses the lazy bodies, which report a syntax error
+ * through ErrMsg.  `make difftest` runs it on the test files, on random
+ * expressions (including invalid ones) and on programs from
+ * ProgramGenerator:
+ *
+ *     java ParserDiff [--seed=N] [--exps=N] [--programs=N] [FILE ...]
+ *
+ * It prints the inputs on which the parsers disagree and exits with
+ * status 1 if there are any.
+ */
+class ParserDiff {
+    private static final String[] KINDS = { "cup", "lr", "climb", "lazy" };
+
+    // operands and operators the random expressions are made of
+    private static final String[] ATOMS = {
+        "a", "b", "c", "s.f", "s.t.u", "7", "0", "\"str\"", "tru", "fls", "f()", "g(a)"
+    };
+    private static final String[] BINARY = {
+        "+", "-", "*", "/", "&&", "||", "==", "!=", "<", ">", "<=", ">="
+    };
+
+    private Random random;
+    private int inputs = 0;
+    private int failures = 0;
+
+    ParserDiff(long seed) {
+        random = new Random(seed);
+    }
+
+    public static void main(String[] args) throws Exception {
+        long seed = 1;
+        int exps = 0;
+        int programs = 0;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("--"); i++) {
+            String arg = args[i];
+            int eq = arg.indexOf('=');
+            String name = (eq < 0) ? arg : arg.substring(0, eq);
+            try {
+                if (name.equals("--seed") && eq > 0)
+                    seed = Long.parseLong(arg.substring(eq + 1));
+                else if (name.equals("--exps") && eq > 0)
+                    exps = Integer.parseInt(arg.substring(eq + 1));
+                else if (name.equals("--programs") && eq > 0)
+                    programs = Integer.parseInt(arg.substring(eq + 1));
+                else
+                    throw new NumberFormatException();
+            } catch (NumberFormatException ex) {
+                System.err.println("usage: java ParserDiff [--seed=N] [--exps=N] [--programs=N] [FILE ...]");
+                System.exit(-1);
+            }
+        }
+        ParserDiff diff = new ParserDiff(seed);
+        for (; i < args.length; i++)
+            diff.check(args[i], new String(Files.readAllBytes(Paths.get(args[i])), "UTF-8"));
+        for (int n = 0; n < exps; n++)
+            diff.check("expression " + n, diff.randomProgram());
+        for (int n = 0; n < programs; n++) {
+            ProgramGenerator gen = new ProgramGenerator();
+            gen.set("seed", Long.toString(seed + n));
+            gen.set("functions", "20");
+            gen.set("exp-depth", Integer.toString(2 + n % 6));
+            StringWriter out = new StringWriter();
+            gen.generate(out);
+            diff.check("program " + n, out.toString());
+        }
+        System.out.println("ParserDiff: " + diff.inputs + " inputs, "
+                           + diff.failures + " disagreements");
+        System.exit(diff.failures == 0 ? 0 : 1);
+    }
+
+    // parses source with every parser and reports a disagreement
+    private void check(String name, String source) throws IOException {
+        inputs++;
+        String first = null;
+        for (String kind : KINDS) {
+            String result = parse(kind, source);
+            if (first == null) {
+                first = result;
+            } else if (!result.equals(first)) {
+                failures++;
+                System.out.println(name + ": " + KINDS[0] + " and " + kind + " disagree");
+                if (source.length() < 2000)
+                    System.out.println(source);
+                return;
+            }
+        }
+    }
+
+    // the AST as hex, or where the syntax error was found
+    private static String parse(String kind, String source) throws IOException {
+        CharNum.num = 1;
+        Yylex scanner = new Yylex(new StringReader(source));
+        Recorder errors = new Recorder(scanner);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        // a lazy body reports its syntax error through ErrMsg while being
+        // written, and is left empty
+        List<Diagnostic> bodyErrors = new ArrayList<Diagnostic>();
+        if (kind.equals("lazy"))
+            ErrMsg.collector = bodyErrors;
+        try {
+            ProgramNode program;
+            if (kind.equals("cup")) {
+                program = (ProgramNode)errors.parse().value;
+            } else {
+                LrDriver driver = new LrDriver(scanner, errors);
+                driver.setPrecedenceClimbing(kind.equals("climb"));
+                driver.setLazyBodies(kind.equals("lazy"));
+                program = driver.parse();
+            }
+            AstWriter w = new AstWriter();
+            program.serialize(w);
+            w.writeTo(bytes);
+        } catch (IOException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            return "syntax error at " + errors.error;
+        } finally {
+            ErrMsg.collector = null;
+        }
+        for (Diagnostic d : bodyErrors)
+            if (d.fatal && d.msg.startsWith("Syntax error"))
+                return "syntax error at "
+                    + (d.lineNum == 0 ? "end of file" : d.lineNum + ":" + d.charNum);
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes.toByteArray())
+            sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
+    // a function whose statements use random expressions
+    private String randomProgram() {
+        StringBuilder sb = new StringBuilder("void h() {\n");
+        sb.append("    x = ").append(randomExp(4)).append(";\n");
+        sb.append("    print << ").append(randomExp(4)).append(";\n");
+        sb.append("    if ").append(randomExp(3)).append(" { }\n");
+        sb.append("    h(").append(randomExp(2)).append(", ").append(randomExp(2)).append(");\n");
+        sb.append("    ret ").append(randomExp(3)).append(";\n");
+        return sb.append("}\n").toString();
+    }
+
+    // mostly valid expressions; chained comparisons and assignments to
+    // non-locations make some of them syntax errors
+    private String randomExp(int depth) {
+        int r = random.nextInt(depth <= 0 ? 2 : 10);
+        switch (r) {
+            case 0:
+            case 1:
+                return ATOMS[random.nextInt(ATOMS.length)];
+            case 2:
+                return "!" + randomExp(depth - 1);
+            case 3:
+                return "-" + randomExp(depth - 1);
+            case 4:
+                return "(" + randomExp(depth - 1) + ")";
+            case 5:
+                return ATOMS[random.nextInt(5)] + " = " + randomExp(depth - 1);
+            case 6:
+                return "g(" + randomExp(depth - 1) + ", " + randomExp(depth - 1) + ")";
+            default:
+                return operand(depth - 1) + " " + BINARY[random.nextInt(BINARY.length)]
+                    + " " + operand(depth - 1);
+        }
+    }
+
+    // half of the operands are parenthesized, which keeps most chains
+    // of comparisons valid
+    private String operand(int depth) {
+        String e = randomExp(depth);
+        return random.nextBoolean() ? e : "(" + e + ")";
+    }
+
+    /**
+     * The b parser, but a syntax error is only recorded, and ends the
+     * parse with an Exception instead of the program.
+     */
+    static class Recorder extends parser {
+        String error = null;
+
+        Recorder(java_cup.runtime.Scanner s) {
+            super(s);
+        }
+
+        public void syntax_error(Symbol currToken) {
+            if (error != null)
+                return;
+            if (currToken.value == null)
+                error = "end of file";
+            else
+                error = ((TokenVal)currToken.value).linenum + ":"
+                    + ((TokenVal)currToken.value).charnum;
+        }
+
+        public void unrecovered_syntax_error(Symbol currToken) throws Exception {
+            done_parsing();
+            throw new Exception("Syntax error");
+        }
+    }
+}
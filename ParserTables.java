@@ -0,0 +1,156 @@
+import java.io.*;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.regex.*;
+
+/**
+ * ParserTables
+ *
+ * The LR tables of the CUP-generated parser, decoded only when a parser
+ * first needs them.  CUP writes each table into parser.java as a string
+ * constant that the parser class decodes in its static initializer, so
+ * every run paid for decoding all three (through a StringBuffer, in the
+ * interpreter) before the first token.  After CUP, the build runs
+ *
+ *     java ParserTables parser.java ParserTableData.java
+ *
+ * which decodes the tables once, writes them to the generated class
+ * ParserTableData in a flat form, and rewrites parser.java so that
+ * production_table(), action_table() and reduce_table() return the arrays
+ * of ParserTableData.  That class is only loaded, and the tables decoded,
+ * the first time a parser asks for them (when it starts to parse), and
+ * the arrays are shared by all parsers.
+ *
+ * Each table is a string of chars holding shorts: the number of rows,
+ * then each row as its length and its entries.
+ */
+class ParserTables {
+    // the names CUP gives the tables, in the order they are stored
+    private static final String[] TABLES = {
+        "_production_table", "_action_table", "_reduce_table"
+    };
+
+    // the decoder, copied into ParserTableData
+    private static final String DECODE =
+        "    private static short[][] decode(String s) {\n" +
+        "        int n = 0;\n" +
+        "        short[][] table = new short[s.charAt(n++)][];\n" +
+        "        for (int r = 0; r < table.length; r++) {\n" +
+        "            short[] row = new short[s.charAt(n++)];\n" +
+        "            for (int j = 0; j < row.length; j++)\n" +
+        "                row[j] = (short)s.charAt(n++);\n" +
+        "            table[r] = row;\n" +
+        "        }\n" +
+        "        return table;\n" +
+        "    }\n";
+
+    // a table in the form DECODE reads, as Java string literals
+    private static String encode(short[][] table) {
+        List<Integer> chars = new ArrayList<Integer>();
+        chars.add(table.length);
+        for (short[] row : table) {
+            chars.add(row.length);
+            for (short s : row)
+                chars.add((int)s);
+        }
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < chars.size(); i++) {
+            if (i > 0 && i % 16 == 0)
+                sb.append("\" +\n        \"");
+            literal(sb, chars.get(i));
+        }
+        return sb.append('"').toString();
+    }
+
+    // octal escapes below 256, as \\u escapes there would be read as
+    // line ends and quotes before the literal is
+    private static void literal(StringBuilder sb, int n) {
+        char c = (char)n;
+        if (c >= ' ' && c < 127 && c != '"' && c != '\\')
+            sb.append(c);
+        else if (c < 256)
+            sb.append(String.format("\\%03o", (int)c));
+        else
+            sb.append(String.format("\\u%04x", (int)c));
+    }
+
+    /**
+     * Moves the tables of the CUP parser source in args[0] to the class
+     * source args[1] and rewrites the parser source to use them.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("usage: java ParserTables parser.java ParserTableData.java");
+            System.exit(-1);
+        }
+        Path source = Paths.get(args[0]);
+        String text = new String(Files.readAllBytes(source), StandardCharsets.UTF_8);
+        Method unpack = java_cup.runtime.lr_parser.class
+            .getDeclaredMethod("unpackFromStrings", String[].class);
+        unpack.setAccessible(true);
+
+        String[] fields = { "PRODUCTION", "ACTION", "REDUCE" };
+        StringBuilder data = new StringBuilder();
+        data.append("// Generated by ParserTables from ").append(source.getFileName())
+            .append("; do not edit.\n\n")
+            .append("class ParserTableData {\n");
+        for (int i = 0; i < TABLES.length; i++) {
+            // /** ... table. */
+            // protected static final short _x_table[][] =
+            //   unpackFromStrings(new String[] { "..." + "..." });
+            Matcher m = Pattern.compile(
+                "(?:\\s*/\\*\\*[^\\n]*\\*/)?\\s*protected static final short(?:\\[\\]\\[\\])? " + TABLES[i]
+                + "(?:\\[\\]\\[\\])?\\s*=\\s*unpackFromStrings\\(new String\\[\\] \\{(.*?)\\}\\);\\n",
+                Pattern.DOTALL).matcher(text);
+            if (!m.find())
+                throw new IOException(TABLES[i] + " not found in " + source);
+            short[][] table = (short[][])unpack.invoke(null,
+                (Object)new String[] { literals(m.group(1)) });
+            data.append("    static final short[][] ").append(fields[i])
+                .append(" = decode(\n        ").append(encode(table)).append(");\n\n");
+            text = text.substring(0, m.start()) + "\n" + text.substring(m.end())
+                .replace("{return " + TABLES[i] + ";}",
+                         "{return ParserTableData." + fields[i] + ";}");
+        }
+        data.append(DECODE).append("}\n");
+        Files.write(Paths.get(args[1]), data.toString().getBytes(StandardCharsets.UTF_8));
+        Files.write(source, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // the value of a concatenation of Java string literals
+    private static String literals(String code) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while ((i = code.indexOf('"', i)) >= 0) {
+            for (i++; code.charAt(i) != '"'; i++) {
+                char c = code.charAt(i);
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                c = code.charAt(++i);
+                if (c >= '0' && c <= '7') {
+                    int n = 0;
+                    for (int k = 0; k < 3 && code.charAt(i) >= '0' && code.charAt(i) <= '7'; k++)
+                        n = n * 8 + code.charAt(i++) - '0';
+                    i--;
+                    sb.append((char)n);
+                } else if (c == 'u') {
+                    while (code.charAt(i) == 'u')
+                        i++;
+                    sb.append((char)Integer.parseInt(code.substring(i, i + 4), 16));
+                    i += 3;
+                } else {
+                    int k = "btnfr\"'\\".indexOf(c);
+                    if (k < 0)
+                        throw new IOException("bad escape \\" + c);
+                    sb.append("\b\t\n\f\r\"'\\".charAt(k));
+                }
+            }
+            i++;
+        }
+        return sb.toString();
+    }
+}
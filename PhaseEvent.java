@@ -0,0 +1,61 @@
+import jdk.jfr.*;
+
+/**
+ * PhaseEvent
+ *
+ * A Java Flight Recorder event for one phase of P4 (lex, parse,
+ * name-analysis, unparse, and load-ast/store-ast with --cache-dir).
+ * Record a run with
+ *
+ *     java -XX:StartFlightRecording:filename=p4.jfr,settings=b.jfc P4 ...
+ *     jfr print --events b.Phase,b.Declaration p4.jfr
+ *
+ * The thresholds below are the defaults; b.jfc (or any .jfc naming
+ * b.Phase and b.Declaration) overrides them, so only phases and
+ * declarations slower than the threshold are recorded.  When no recording
+ * is running the events cost nothing beyond creating them.
+ */
+@Name("b.Phase")
+@Label("Compiler Phase")
+@Category("b")
+@Description("One phase of P4 on one input file")
+@StackTrace(false)
+@Threshold("0 ms")
+class PhaseEvent extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("File")
+    String file;
+
+    PhaseEvent(String phase, String file) {
+        this.phase = phase;
+        this.file = file;
+    }
+}
+
+/**
+ * DeclEvent
+ *
+ * A Java Flight Recorder event for the name analysis of one top-level
+ * declaration, carrying its name, kind, line and number of tokens.
+ */
+@Name("b.Declaration")
+@Label("Declaration Analysis")
+@Category("b")
+@Description("Name analysis of one top-level declaration")
+@StackTrace(false)
+@Threshold("10 ms")
+class DeclEvent extends Event {
+    @Label("Name")
+    String name;
+
+    @Label("Kind")
+    String kind;            // variable, function or struct
+
+    @Label("Line")
+    int line;
+
+    @Label("Tokens")
+    int tokens;             // -1 if not known
+}
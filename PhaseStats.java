@@ -0,0 +1,174 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java_cup.runtime.Symbol;
+
+/**
+ * PhaseStats
+ *
+ * What P4 --stats reports: for each phase, its wall time, the CPU time
+ * of the thread and the bytes it allocated, and a list of named counts.
+ * Call begin(name) and end() around each phase and count() for the
+ * counts, then print() it as text or JSON.
+ */
+class PhaseStats {
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+    private List<Phase> phases = new ArrayList<Phase>();
+    private LinkedHashMap<String, Object> counts = new LinkedHashMap<String, Object>();
+    private Phase current;
+
+    public PhaseStats() {
+        if (THREADS.isThreadCpuTimeSupported())
+            THREADS.setThreadCpuTimeEnabled(true);
+        if (THREADS.isThreadAllocatedMemorySupported())
+            THREADS.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    /**
+     * Starts timing a phase (ending the current one, if any).
+     */
+    public void begin(String name) {
+        if (current != null)
+            end();
+        current = new Phase(name);
+        current.cpu = cpuTime();
+        current.alloc = allocated();
+        current.wall = System.nanoTime();
+    }
+
+    /**
+     * Ends the current phase.
+     */
+    public void end() {
+        long wall = System.nanoTime();
+        current.wall = wall - current.wall;
+        current.cpu = cpuTime() - current.cpu;
+        current.alloc = allocated() - current.alloc;
+        phases.add(current);
+        current = null;
+    }
+
+    /**
+     * Sets a count (a long, or a double for averages).
+     */
+    public void count(String name, Number value) {
+        counts.put(name, value);
+    }
+
+    /**
+     * Sets a list of counts, such as a histogram.
+     */
+    public void count(String name, long[] values) {
+        counts.put(name, values);
+    }
+
+    /**
+     * Prints the phases and counts, as JSON (one object) if json is set.
+     */
+    public void print(PrintStream out, boolean json) {
+        if (json) {
+            StringBuilder sb = new StringBuilder("{\"phases\":[");
+            for (int i = 0; i < phases.size(); i++) {
+                Phase p = phases.get(i);
+                if (i > 0)
+                    sb.append(',');
+                sb.append("{\"name\":\"").append(p.name)
+                  .append("\",\"wall_ns\":").append(p.wall)
+                  .append(",\"cpu_ns\":").append(p.cpu)
+                  .append(",\"alloc_bytes\":").append(p.alloc).append('}');
+            }
+            sb.append("],\"counts\":{");
+            boolean first = true;
+            for (Map.Entry<String, Object> e : counts.entrySet()) {
+                if (!first)
+                    sb.append(',');
+                first = false;
+                sb.append('"').append(e.getKey()).append("\":").append(format(e.getValue(), ","));
+            }
+            out.println(sb.append("}}"));
+            return;
+        }
+        out.println(String.format("%-24s %12s %12s %14s", "phase", "wall ms", "cpu ms", "alloc bytes"));
+        for (Phase p : phases)
+            out.println(String.format("%-24s %12.3f %12.3f %14d", p.name,
+                                      p.wall / 1e6, p.cpu / 1e6, p.alloc));
+        for (Map.Entry<String, Object> e : counts.entrySet())
+            out.println(String.format("%-24s %12s", e.getKey(), format(e.getValue(), " ")));
+    }
+
+    // a count as text; the values of a list are separated by sep
+    private static String format(Object value, String sep) {
+        if (value instanceof long[]) {
+            StringBuilder sb = new StringBuilder("[");
+            long[] values = (long[])value;
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0)
+                    sb.append(sep);
+                sb.append(values[i]);
+            }
+            return sb.append(']').toString();
+        }
+        if (value instanceof Double)
+            return String.format(Locale.ROOT, "%.3f", ((Double)value).doubleValue());
+        return value.toString();
+    }
+
+    // -1 where the JVM cannot measure it
+    private static long cpuTime() {
+        return THREADS.isThreadCpuTimeEnabled() ? THREADS.getCurrentThreadCpuTime() : -1;
+    }
+
+    private static long allocated() {
+        return THREADS.isThreadAllocatedMemoryEnabled()
+            ? THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+    }
+
+    // one timed phase; the fields hold the start values until end()
+    private static class Phase {
+        String name;
+        long wall;
+        long cpu;
+        long alloc;
+
+        Phase(String name) {
+            this.name = name;
+        }
+    }
+}
+
+/**
+ * TokenList
+ *
+ * A scanner that replays tokens read earlier, so that P4 --stats can time
+ * lexing and parsing separately.
+ */
+class TokenList implements java_cup.runtime.Scanner {
+    private List<Symbol> tokens = new ArrayList<Symbol>();
+    private int next = 0;
+
+    /**
+     * Reads all tokens of s, up to and including EOF.
+     */
+    TokenList(java_cup.runtime.Scanner s) throws Exception {
+        Symbol t;
+        do {
+            t = s.next_token();
+            tokens.add(t);
+        } while (t.sym != sym.EOF);
+    }
+
+    // number of tokens, not counting EOF
+    public int size() {
+        return tokens.size() - 1;
+    }
+
+    // the parser shifts EOF and reads on, so each read past the end gets
+    // a new EOF (CUP rejects a Symbol it has seen)
+    public Symbol next_token() {
+        if (next < tokens.size())
+            return tokens.get(next++);
+        return new Symbol(sym.EOF);
+    }
+}
@@ -0,0 +1,452 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * ProgramGenerator
+ *
+ * Writes random b programs for benchmarks and stress tests.  The program
+ * is determined by the seed and the knobs, and is written as it is
+ * generated, so its size is limited only by the disk:
+ *
+ *     java ProgramGenerator [--knob=value ...] [FILE]
+ *
+ * writes to FILE, or to standard output.  The knobs:
+ *    seed           seed of the random choices (default 1)
+ *    functions      number of functions (10)
+ *    globals        number of global variables (8)
+ *    struct-depth   structs S0 .. Sn, each but S0 holding an S(k-1) (2)
+ *    scope-depth    how deep if/while/repeat blocks nest (3)
+ *    stmts          statements per block (5)
+ *    exp-depth      how deep expressions nest (3)
+ *    reuse          chance that a local shadows a visible variable
+ *                   instead of getting a new name (0.1)
+ *    errors         chance that a statement or local declaration holds a
+ *                   name analysis error (0)
+ *
+ * Every construct of the grammar in b.cup is used.  With errors=0 the
+ * program passes name analysis; otherwise each injected error is one of
+ * an undeclared identifier, an invalid field name, a dot-access of a
+ * non-struct, or a multiply declared local.
+ */
+class ProgramGenerator {
+    private static final String[] BINARY_OPS =
+        { "+", "-", "*", "/", "&&", "||", "==", "!=", "<", ">", "<=", ">=" };
+
+    private long seed = 1;
+    private int functions = 10;
+    private int globals = 8;
+    private int structDepth = 2;
+    private int scopeDepth = 3;
+    private int stmts = 5;
+    private int expDepth = 3;
+    private double reuse = 0.1;
+    private double errors = 0;
+
+    private Random rand;
+    private Writer out;
+    // visible variables, innermost scope last
+    private ArrayList<ArrayList<Var>> scopes;
+    private int currentFn;          // functions f0 .. currentFn may be called
+    private int nextLocal;
+    private int nextUndeclared;
+
+    public static void main(String[] args) throws IOException {
+        ProgramGenerator gen = new ProgramGenerator();
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("--"); i++) {
+            int eq = args[i].indexOf('=');
+            if (eq < 0 || !gen.set(args[i].substring(2, eq), args[i].substring(eq + 1))) {
+                System.err.println("bad option " + args[i]);
+                System.exit(-1);
+            }
+        }
+        if (args.length - i > 1) {
+            System.err.println("usage: java ProgramGenerator [--knob=value ...] [FILE]");
+            System.exit(-1);
+        }
+        OutputStream os = (i < args.length) ? new FileOutputStream(args[i]) : System.out;
+        try (Writer w = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"), 1 << 16)) {
+            gen.generate(w);
+        }
+    }
+
+    /**
+     * Sets a knob (named as on the command line).  Returns false if there
+     * is no such knob or the value is not valid for it.
+     */
+    public boolean set(String knob, String value) {
+        try {
+            switch (knob) {
+                case "seed":         seed = Long.parseLong(value); break;
+                case "functions":    functions = nonNegative(value); break;
+                case "globals":      globals = nonNegative(value); break;
+                case "struct-depth": structDepth = nonNegative(value); break;
+                case "scope-depth":  scopeDepth = nonNegative(value); break;
+                case "stmts":        stmts = nonNegative(value); break;
+                case "exp-depth":    expDepth = nonNegative(value); break;
+                case "reuse":        reuse = probability(value); break;
+                case "errors":       errors = probability(value); break;
+                default:             return false;
+            }
+            return true;
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes one program to w.
+     */
+    public void generate(Writer w) throws IOException {
+        rand = new Random(seed);
+        out = w;
+        scopes = new ArrayList<ArrayList<Var>>();
+        scopes.add(new ArrayList<Var>());
+        nextLocal = 0;
+        nextUndeclared = 0;
+
+        for (int k = 0; k <= structDepth; k++)
+            structDecl(k);
+        for (int g = 0; g < globals; g++) {
+            Var v = new Var("g" + g, randomKind());
+            varDecl(v, "");
+            scopes.get(0).add(v);
+        }
+        for (int f = 0; f < functions; f++) {
+            currentFn = f;
+            fnDecl(f);
+        }
+        out.write("void main() {\n    print << \"done\";\n}\n");
+        out.flush();
+    }
+
+    // --- declarations ---
+
+    // struct Sk: int a; bool b; and for k > 0 a field "in" of type S(k-1)
+    private void structDecl(int k) throws IOException {
+        out.write("struct S" + k + " {\n    int a;\n    bool b;\n");
+        if (k > 0)
+            out.write("    struct S" + (k - 1) + " in;\n");
+        out.write("}\n\n");
+    }
+
+    private void varDecl(Var v, String indent) throws IOException {
+        out.write(indent);
+        out.write(v.struct < 0 ? (v.struct == Var.INT ? "int " : "bool ")
+                               : "struct S" + v.struct + " ");
+        out.write(v.name);
+        out.write(";\n");
+    }
+
+    private void fnDecl(int f) throws IOException {
+        int ret = rand.nextInt(3);
+        out.write(ret == 0 ? "int" : ret == 1 ? "bool" : "void");
+        out.write(" f" + f + "(");
+        ArrayList<Var> scope = new ArrayList<Var>();
+        int n = arity(f);
+        for (int j = 0; j < n; j++) {
+            Var p = new Var("p" + j, (j & 1) == 0 ? Var.INT : Var.BOOL);
+            if (j > 0)
+                out.write(", ");
+            out.write(p.struct == Var.INT ? "int " : "bool ");
+            out.write(p.name);
+            scope.add(p);
+        }
+        out.write(") {\n");
+        scopes.add(scope);
+        block(1);
+        out.write(ret == 2 ? "    ret;\n" : "    ret ");
+        if (ret != 2) {
+            exp(expDepth, false);
+            out.write(";\n");
+        }
+        scopes.remove(scopes.size() - 1);
+        out.write("}\n\n");
+    }
+
+    // local declarations and statements of a block, into the innermost scope
+    private void block(int depth) throws IOException {
+        String indent = "    ".repeat(depth);
+        ArrayList<Var> scope = scopes.get(scopes.size() - 1);
+        int locals = 1 + rand.nextInt(3);
+        for (int i = 0; i < locals; i++) {
+            Var v;
+            if (!scope.isEmpty() && rand.nextDouble() < errors) {
+                // multiply declared
+                v = scope.get(rand.nextInt(scope.size()));
+                varDecl(v, indent);
+                continue;
+            }
+            Var outer = rand.nextDouble() < reuse ? shadowable(scope) : null;
+            v = (outer != null) ? new Var(outer.name, outer.struct)
+                                : new Var("v" + nextLocal++, randomKind());
+            varDecl(v, indent);
+            scope.add(v);
+        }
+        for (int i = 0; i < stmts; i++)
+            stmt(depth, indent);
+    }
+
+    // --- statements ---
+
+    private void stmt(int depth, String indent) throws IOException {
+        out.write(indent);
+        if (rand.nextDouble() < errors) {
+            badStmt();
+            return;
+        }
+        int choice = rand.nextInt(depth < scopeDepth ? 12 : 8);
+        switch (choice) {
+            case 0:
+            case 1:
+                loc();
+                out.write(" = ");
+                exp(expDepth, false);
+                out.write(";\n");
+                break;
+            case 2:
+                out.write(rand.nextBoolean() ? "++" : "--");
+                loc();
+                out.write(";\n");
+                break;
+            case 3:
+                out.write("receive >> ");
+                loc();
+                out.write(";\n");
+                break;
+            case 4:
+                out.write("print << ");
+                exp(expDepth, false);
+                out.write(";\n");
+                break;
+            case 5:
+                call(expDepth);
+                out.write(";\n");
+                break;
+            case 6:
+                out.write("ret");
+                if (rand.nextBoolean()) {
+                    out.write(" ");
+                    exp(expDepth, false);
+                }
+                out.write(";\n");
+                break;
+            case 7:
+                loc();
+                out.write(" = ");
+                loc();
+                out.write(";\n");
+                break;
+            case 8:
+                nested("if ", depth, indent);
+                break;
+            case 9:
+                nested("if ", depth, indent);
+                out.write(indent);
+                out.write("else {\n");
+                scopes.add(new ArrayList<Var>());
+                block(depth + 1);
+                scopes.remove(scopes.size() - 1);
+                out.write(indent);
+                out.write("}\n");
+                break;
+            case 10:
+                nested("while ", depth, indent);
+                break;
+            default:
+                nested("repeat ", depth, indent);
+                break;
+        }
+    }
+
+    // keyword exp { block }
+    private void nested(String keyword, int depth, String indent) throws IOException {
+        out.write(keyword);
+        exp(expDepth, true);
+        out.write(" {\n");
+        scopes.add(new ArrayList<Var>());
+        block(depth + 1);
+        scopes.remove(scopes.size() - 1);
+        out.write(indent);
+        out.write("}\n");
+    }
+
+    // an assignment holding a name analysis error
+    private void badStmt() throws IOException {
+        Var v = randomVar();
+        switch (rand.nextInt(3)) {
+            case 0:
+                out.write("undeclared" + nextUndeclared++);
+                break;
+            case 1:
+                if (v.struct >= 0) {
+                    out.write(v.name + ".noSuchField");
+                    break;
+                }
+                // fall through: dot-access of a non-struct instead
+            default:
+                if (v.struct >= 0) {
+                    out.write(v.name + ".a.a");
+                } else {
+                    out.write(v.name + ".a");
+                }
+                break;
+        }
+        out.write(" = 0;\n");
+    }
+
+    // --- expressions ---
+
+    // an expression at most depth deep; nested asks for parentheses around
+    // anything but a term, so the result can be an operand
+    private void exp(int depth, boolean nested) throws IOException {
+        int choice = (depth == 0) ? 0 : rand.nextInt(6);
+        if (choice <= 1) {
+            term(depth);
+            return;
+        }
+        if (nested)
+            out.write("(");
+        switch (choice) {
+            case 2:
+            case 3:
+                exp(depth - 1, true);
+                out.write(" " + BINARY_OPS[rand.nextInt(BINARY_OPS.length)] + " ");
+                exp(depth - 1, true);
+                break;
+            case 4:
+                out.write(rand.nextBoolean() ? "-" : "!");
+                exp(depth - 1, true);
+                break;
+            default:
+                loc();
+                out.write(" = ");
+                exp(depth - 1, false);
+                break;
+        }
+        if (nested)
+            out.write(")");
+    }
+
+    private void term(int depth) throws IOException {
+        switch (rand.nextInt(depth > 0 ? 7 : 6)) {
+            case 0:
+            case 1:
+                loc();
+                break;
+            case 2:
+                out.write(Integer.toString(rand.nextInt(100000)));
+                break;
+            case 3:
+                out.write("\"s" + rand.nextInt(100) + "\\n\"");
+                break;
+            case 4:
+                out.write(rand.nextBoolean() ? "tru" : "fls");
+                break;
+            case 5:
+                call(0);
+                break;
+            default:
+                out.write("(");
+                exp(depth - 1, false);
+                out.write(")");
+                break;
+        }
+    }
+
+    // a call of a function declared so far, with arguments depth deep
+    private void call(int depth) throws IOException {
+        int f = rand.nextInt(currentFn + 1);
+        out.write("f" + f + "(");
+        for (int j = 0; j < arity(f); j++) {
+            if (j > 0)
+                out.write(", ");
+            exp(depth, false);
+        }
+        out.write(")");
+    }
+
+    // a variable, followed through struct fields down to an int or bool
+    private void loc() throws IOException {
+        Var v = randomVar();
+        out.write(v.name);
+        for (int k = v.struct; k >= 0; k--) {
+            if (k > 0 && rand.nextInt(3) != 0) {
+                out.write(".in");
+                continue;
+            }
+            out.write(rand.nextBoolean() ? ".a" : ".b");
+            break;
+        }
+    }
+
+    // --- helpers ---
+
+    // a visible variable.  A shadowed one may be picked, but shadowing
+    // keeps the kind, so its name still means a variable of that kind.
+    // Every block declares a local before its statements, so the loop ends.
+    private Var randomVar() {
+        while (true) {
+            ArrayList<Var> scope = scopes.get(rand.nextInt(scopes.size()));
+            if (!scope.isEmpty())
+                return scope.get(rand.nextInt(scope.size()));
+        }
+    }
+
+    // a variable of an enclosing scope whose name is not taken in scope
+    private Var shadowable(ArrayList<Var> scope) {
+        ArrayList<Var> outer = scopes.get(rand.nextInt(scopes.size()));
+        if (outer == scope || outer.isEmpty())
+            return null;
+        Var v = outer.get(rand.nextInt(outer.size()));
+        for (Var w : scope)
+            if (w.name.equals(v.name))
+                return null;
+        return v;
+    }
+
+    // int, bool or one of the structs
+    private int randomKind() {
+        int k = rand.nextInt(structDepth + 4);
+        return k < 2 ? Var.INT : k < 3 ? Var.BOOL : k - 3;
+    }
+
+    // number of parameters of fi; fixed per index so no table is kept
+    private int arity(int f) {
+        long h = (seed ^ f) * 0x9E3779B97F4A7C15L;
+        return (int)((h >>> 61) & 3);
+    }
+
+    private static int nonNegative(String value) {
+        int n = Integer.parseInt(value);
+        if (n < 0)
+            throw new NumberFormatException();
+        return n;
+    }
+
+    private static double probability(String value) {
+        double p = Double.parseDouble(value);
+        if (!(p >= 0 && p <= 1))
+            throw new NumberFormatException();
+        return p;
+    }
+
+    /**
+     * Var
+     *
+     * A variable in scope: its name, and its kind (INT, BOOL, or the
+     * number k of its struct Sk).
+     */
+    private static class Var {
+        static final int INT = -1;
+        static final int BOOL = -2;
+
+        String name;
+        int struct;
+
+        Var(String name, int struct) {
+            this.name = name;
+            this.struct = struct;
+        }
+    }
+}
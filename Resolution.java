@@ -0,0 +1,36 @@
+import java.util.Arrays;
+
+/**
+ * Resolution
+ *
+ * The result of name analysis: the Sym each IdNode resolved to, indexed by
+ * the node's ID.  The parser numbers the IdNodes of a program densely from
+ * 0, so this is a plain array.  Keeping the links here instead of in the
+ * AST leaves the tree read-only, so one tree can be analyzed several times
+ * (or by several threads) with a separate Resolution each time.
+ */
+class Resolution {
+    private Sym[] links;
+
+    /**
+     * @param size expected number of IdNodes (the table grows if needed)
+     */
+    public Resolution(int size) {
+        links = new Sym[Math.max(size, 16)];
+    }
+
+    public void set(int nodeId, Sym sym) {
+        if (nodeId >= links.length)
+            links = Arrays.copyOf(links, Math.max(nodeId + 1, links.length * 2));
+        links[nodeId] = sym;
+    }
+
+    /**
+     * Returns the Sym the node resolved to, or null if it did not resolve.
+     */
+    public Sym get(int nodeId) {
+        if (nodeId >= links.length)
+            return null;
+        return links[nodeId];
+    }
+}
@@ -0,0 +1,83 @@
+import java.util.*;
+
+/**
+ * StructLayout
+ *
+ * The fields of one struct declaration.  Each field gets a slot number in
+ * declaration order; a single hash lookup maps a field name to its slot
+ * and the slot array gives the field's Sym (and so its type).  Every
+ * variable of the struct type shares the layout of its declaration, so
+ * resolving a.b.c costs one lookup per dot.
+ */
+class StructLayout {
+    private HashMap<String, Integer> slots;
+    private String[] names;
+    private Sym[] fields;
+    private int size;
+
+    public StructLayout() {
+        slots = new HashMap<String, Integer>();
+        names = new String[4];
+        fields = new Sym[4];
+        size = 0;
+    }
+
+    /**
+     * Adds a field in the next free slot.
+     * @param name field name
+     * @param sym the field's symbol
+     */
+    public void addField(String name, Sym sym) throws DuplicateSymException {
+        if (tryAddField(name, sym) != null)
+            throw new DuplicateSymException();
+    }
+
+    /**
+     * Adds a field in the next free slot, unless there is already a field
+     * of that name.
+     * @param name field name
+     * @param sym the field's symbol
+     * @return the field already named name, or null if sym was added
+     */
+    public Sym tryAddField(String name, Sym sym) {
+        Integer slot = slots.get(name);
+        if (slot != null)
+            return fields[slot];
+        if (size == fields.length) {
+            names = Arrays.copyOf(names, size * 2);
+            fields = Arrays.copyOf(fields, size * 2);
+        }
+        slots.put(name, size);
+        names[size] = name;
+        fields[size++] = sym;
+        return null;
+    }
+
+    /**
+     * Returns the slot of the named field, or -1 if there is none.
+     */
+    public int slotOf(String name) {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Returns the Sym of the named field, or null if there is none.
+     */
+    public Sym lookupField(String name) {
+        Integer slot = slots.get(name);
+        return slot == null ? null : fields[slot];
+    }
+
+    public String getName(int slot) {
+        return names[slot];
+    }
+
+    public Sym getField(int slot) {
+        return fields[slot];
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -1,61 +1,47 @@
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class Sym {
-    protected String type;
-    private SymTable structTable;
+    protected Type type;
     private boolean isStruct;
     
-    public Sym(String type) {
+    public Sym(Type type) {
         this.type = type;
         this.isStruct = false;
-        this.structTable = null;
     }
-    // melo for struct
-    public Sym(String type,boolean isStruct){
+    // melo for struct; type must be the declaration's StructType
+    public Sym(Type type,boolean isStruct){
         this(type);
         this.isStruct = isStruct;
-        if(isStruct){
-            structTable = new SymTable();
-        }
     }
     public boolean checkIsStruct(){
         return this.isStruct;
     }
-    public SymTable getStructTable(){
-        return this.structTable;
+    public StructLayout getStructLayout(){
+        if(!isStruct)
+            return null;
+        return ((StructType)type).getLayout();
     }
     //
-    public String getType() {
+    public Type getType() {
         return type;
     }
     
     public String toString() {
-        return type;
+        return type.toString();
     }
 }
 //melo
 class FuncSym extends Sym{
-    private String retType;
-    private int numParas;
-    private List<String> paras;
-    public FuncSym(String retType,List<String> paras){
-        super("func");
-        this.retType = retType;
-        this.numParas = paras.size();
-        this.paras = paras;
-    }
-    public String getRetType(){
-        return this.retType;
+    public FuncSym(Type retType,Type[] paras){
+        super(FnType.of(retType, paras));
     }
-    public int getNumParas(){
-        return this.numParas;
+    public Type getRetType(){
+        return ((FnType)type).getRetType();
     }
-    public List<String> getParas(){
-        return this.paras;
+    public int getNumParas(){
+        return ((FnType)type).getParas().length;
     }
-    public String toString(){
-        String output = this.paras.stream().collect(Collectors.joining(", ")); 
-        return output+ " -> " + this.retType;
+    public Type[] getParas(){
+        return ((FnType)type).getParas();
     }
 }
@@ -1,103 +1,101 @@
 import java.util.*;
 
-public class SymTable {
-    private List<HashMap<String, Sym>> list;
-    //melo
-    private HashMap<String, Sym> structDefinedList;
-    //
-    
-    public SymTable() {
-        list = new LinkedList<HashMap<String, Sym>>();
-        list.add(new HashMap<String, Sym>());
-        structDefinedList = new HashMap<String, Sym>();
-    }
-    //melo
-    public HashMap<String, Sym> getStructDefinedList(){
-        return this.structDefinedList;
-    }
-    public void setStructDefinedList(HashMap<String, Sym> OldStructDefinedList){
-        this.structDefinedList = OldStructDefinedList;
-    }
-    public void addStruct(String name, Sym sym) throws DuplicateSymException{
-        if (structDefinedList.containsKey(name)||this.lookupGlobal(name)!=null){
-            throw new DuplicateSymException();
-        }
-        structDefinedList.put(name,sym);
-    }
-    public Sym lookupStruct(String name){
-        if (structDefinedList.isEmpty())
-            return null;
-        return structDefinedList.get(name);
-    }
-    //
-    
-    public void addDecl(String name, Sym sym) 
-	throws DuplicateSymException, EmptySymTableException, WrongArgumentException {
-	if (name == null && sym == null) {
-	    throw new WrongArgumentException("Arguments name and sym are null.");
-	}
-	else if (name == null) {
-	    throw new WrongArgumentException("Argument name is null.");
-	}
-	else if (sym == null) {
-	    throw new WrongArgumentException("Argument sym is null.");
-	}
-               
-        if (list.isEmpty()) {
-            throw new EmptySymTableException();
-        }
-	
-        HashMap<String, Sym> symTab = list.get(0);
-        if (symTab.containsKey(name)||structDefinedList.containsKey(name))
-            throw new DuplicateSymException();
-        // if (symTab.containsKey(name))
-        //     throw new DuplicateSymException();
-        
-        symTab.put(name, sym);
-    }
-    
-    public void addScope() {
-        list.add(0, new HashMap<String, Sym>());
-    }
-    
-    public Sym lookupLocal(String name) {
-        if (list.isEmpty())
-            return null;
-        
-        HashMap<String, Sym> symTab = list.get(0); 
-        return symTab.get(name);
-    }
-    
-    public Sym lookupGlobal(String name) {
-        if (list.isEmpty())
-            return null;
-        
-        for (HashMap<String, Sym> symTab : list) {
-            Sym sym = symTab.get(name);
-            if (sym != null)
-                return sym;
+/**
+ * SymTable
+ *
+ * The symbol table name analysis works on: a stack of scopes of variable
+ * and function declarations, the innermost first and the globals last,
+ * and beside them the struct declarations.  There is more than one way to
+ * keep it, so this is an interface; create() makes a table of the kind P4
+ * --symtable names:
+ *
+ *   list   ListSymTable, a list of HashMaps searched from the innermost
+ *          scope out (the original table, and the default)
+ *   hash   HashSymTable, one HashMap from each name to its innermost
+ *          binding, so a lookup is one probe however deep the scopes go
+ *
+ * Both give the same results for every sequence of calls; `make difftest`
+ * checks that (see SymTableDiff.java).  The parts that do not depend on
+ * how scopes are kept (structs, the Resolution, the DependencyIndex, the
+ * ErrorLimits and the stats) are in BaseSymTable.
+ */
+public interface SymTable {
+    /**
+     * Returns a new table with one (global) scope.
+     * @param kind "list" or "hash"
+     */
+    static SymTable create(String kind) {
+        switch (kind) {
+            case "list":
+                return new ListSymTable();
+            case "hash":
+                return new HashSymTable();
+            default:
+                throw new IllegalArgumentException("no SymTable kind " + kind);
         }
-        return null;
     }
-    
-    public void removeScope() throws EmptySymTableException {
-        if (list.isEmpty())
-            throw new EmptySymTableException();
-        list.remove(0);
-    }
-    
-    public void print() {
-        System.out.print("\n=== Sym Table ===\n");
-        for (HashMap<String, Sym> symTab : list) {
-            System.out.println(symTab.toString());
-        }
-        System.out.println();
-    }
-    //melo
-    public void printStr() {
-        System.out.print("\n=== SymStr Table ===\n");
-        System.out.println(structDefinedList.toString());
-        System.out.println();
-    }
-    //
+
+    // scopes
+
+    void addScope();
+
+    void removeScope() throws EmptySymTableException;
+
+    // removeScope without the exception: false if there was no scope
+    boolean tryRemoveScope();
+
+    // variables and functions
+
+    void addDecl(String name, Sym sym)
+        throws DuplicateSymException, EmptySymTableException, WrongArgumentException;
+
+    // addDecl without the exceptions, for the analyzer: returns what name
+    // already is in the current scope or as a struct (and adds nothing),
+    // or null once sym is added.  name and sym must not be null, and
+    // there must be a scope.
+    Sym tryAddDecl(String name, Sym sym);
+
+    Sym lookupLocal(String name);
+
+    Sym lookupGlobal(String name);
+
+    // the outermost scope, i.e. the global declarations, or null if there
+    // is no scope; changes to the map are changes to the table
+    HashMap<String, Sym> getGlobalScope();
+
+    // structs
+
+    void addStruct(String name, Sym sym) throws DuplicateSymException;
+
+    // addStruct without the exception: returns the struct or visible
+    // declaration already named name (and adds nothing), or null once
+    // sym is added
+    Sym tryAddStruct(String name, Sym sym);
+
+    Sym lookupStruct(String name);
+
+    HashMap<String, Sym> getStructDefinedList();
+
+    void setStructDefinedList(HashMap<String, Sym> structs);
+
+    // what travels with the table during analysis
+
+    Resolution getResolution();
+
+    void setResolution(Resolution resolution);
+
+    DependencyIndex<?> getDependencyIndex();
+
+    void setDependencyIndex(DependencyIndex<?> deps);
+
+    ErrorLimits getErrorLimits();
+
+    void setErrorLimits(ErrorLimits limits);
+
+    // a copy of the counts so far, or null if counting is off
+    SymTableStats getStats();
+
+    void print();
+
+    void printStr();
 }
@@ -0,0 +1,201 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * SymTableDiff
+ *
+ * A differential test of the SymTable kinds.  It runs
+ *
+ *   - random sequences of SymTable calls (scopes opened and closed,
+ *     names declared, looked up and shadowed, structs, the global scope
+ *     changed directly as IncrementalAnalyzer does) on a table of every
+ *     kind, with the same Syms, and checks that every call returns the
+ *     same thing, that the global scopes stay equal and that attached
+ *     DependencyIndexes record the same uses
+ *   - name analysis of the given files and of programs from
+ *     ProgramGenerator (with injected errors) against a table of every
+ *     kind, and checks that the messages and the unparsed programs
+ *     (with the links of each identifier) are the same
+ *
+ *     java SymTableDiff [--seed=N] [--ops=N] [--programs=N] [FILE ...]
+ *
+ * It prints the cases on which the kinds disagree and exits with status 1
+ * if there are any.
+ */
+class SymTableDiff {
+    private static final String[] KINDS = { "list", "hash" };
+    private static final String[] NAMES = { "a", "b", "c", "d", "e", "f", "g", "h" };
+
+    private Random random;
+    private int cases = 0;
+    private int failures = 0;
+
+    SymTableDiff(long seed) {
+        random = new Random(seed);
+    }
+
+    public static void main(String[] args) throws Exception {
+        long seed = 1;
+        int ops = 0;
+        int programs = 0;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("--"); i++) {
+            String arg = args[i];
+            int eq = arg.indexOf('=');
+            String name = (eq < 0) ? arg : arg.substring(0, eq);
+            try {
+                if (name.equals("--seed") && eq > 0)
+                    seed = Long.parseLong(arg.substring(eq + 1));
+                else if (name.equals("--ops") && eq > 0)
+                    ops = Integer.parseInt(arg.substring(eq + 1));
+                else if (name.equals("--programs") && eq > 0)
+                    programs = Integer.parseInt(arg.substring(eq + 1));
+                else
+                    throw new NumberFormatException();
+            } catch (NumberFormatException ex) {
+                System.err.println("usage: java SymTableDiff [--seed=N] [--ops=N] [--programs=N] [FILE ...]");
+                System.exit(-1);
+            }
+        }
+        SymTableDiff diff = new SymTableDiff(seed);
+        // sequences of up to 500 calls
+        for (int n = 0; n < ops; n += 500)
+            diff.checkCalls("calls " + n, Math.min(500, ops - n));
+        for (; i < args.length; i++)
+            diff.checkProgram(args[i], new String(Files.readAllBytes(Paths.get(args[i])), "UTF-8"));
+        for (int n = 0; n < programs; n++) {
+            ProgramGenerator gen = new ProgramGenerator();
+            gen.set("seed", Long.toString(seed + n));
+            gen.set("functions", "20");
+            gen.set("scope-depth", Integer.toString(1 + n % 6));
+            gen.set("reuse", "0.3");
+            gen.set("errors", (n % 2 == 0) ? "0" : "0.1");
+            StringWriter out = new StringWriter();
+            gen.generate(out);
+            diff.checkProgram("program " + n, out.toString());
+        }
+        System.out.println("SymTableDiff: " + diff.cases + " cases, "
+                           + diff.failures + " disagreements");
+        System.exit(diff.failures == 0 ? 0 : 1);
+    }
+
+    // the same random calls on a table of each kind
+    private void checkCalls(String name, int n) {
+        cases++;
+        SymTable[] tables = new SymTable[KINDS.length];
+        List<DependencyIndex<String>> deps = new ArrayList<DependencyIndex<String>>();
+        for (int k = 0; k < KINDS.length; k++) {
+            tables[k] = SymTable.create(KINDS[k]);
+            deps.add(new DependencyIndex<String>());
+            tables[k].setDependencyIndex(deps.get(k));
+        }
+        List<Sym> syms = new ArrayList<Sym>();
+        StringBuilder log = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            int op = random.nextInt(10);
+            String id = NAMES[random.nextInt(NAMES.length)];
+            Sym sym = new Sym(random.nextBoolean() ? Type.INT : Type.BOOL);
+            syms.add(sym);
+            String decl = "decl" + random.nextInt(4);
+            boolean put = random.nextInt(4) == 0;
+            log.append(op).append(' ').append(id).append('\n');
+            Object first = null;
+            for (int k = 0; k < KINDS.length; k++) {
+                SymTable t = tables[k];
+                Object result;
+                switch (op) {
+                    case 0: t.addScope(); result = null; break;
+                    case 1: result = t.tryRemoveScope(); break;
+                    case 2:
+                    case 3:
+                        result = (t.getGlobalScope() == null) ? "no scope" : t.tryAddDecl(id, sym);
+                        break;
+                    case 4: result = t.tryAddStruct(id, sym); break;
+                    case 5: result = t.lookupLocal(id); break;
+                    case 6:
+                    case 7: result = t.lookupGlobal(id); break;
+                    case 8: result = t.lookupStruct(id); break;
+                    default:
+                        deps.get(k).enter(decl);
+                        if (t.getGlobalScope() != null && put)
+                            t.getGlobalScope().put(id, sym);
+                        result = null;
+                        break;
+                }
+                if (k == 0) {
+                    first = result;
+                } else if (result != first
+                           && !(result instanceof Boolean && result.equals(first))
+                           && !("no scope".equals(result) && "no scope".equals(first))) {
+                    fail(name, KINDS[k] + " returned " + result + ", " + KINDS[0]
+                         + " " + first + " after\n" + log);
+                    return;
+                }
+            }
+            if (!Objects.equals(tables[0].getGlobalScope(), tables[1].getGlobalScope())) {
+                fail(name, "global scopes differ after\n" + log);
+                return;
+            }
+        }
+        for (Sym sym : syms) {
+            if (!deps.get(0).getDependents(sym).equals(deps.get(1).getDependents(sym))) {
+                fail(name, "dependents differ");
+                return;
+            }
+        }
+    }
+
+    // analyzes source against a table of each kind
+    private void checkProgram(String name, String source) throws IOException {
+        cases++;
+        String first = null;
+        for (String kind : KINDS) {
+            String result = analyze(kind, source);
+            if (first == null) {
+                first = result;
+            } else if (!result.equals(first)) {
+                fail(name, KINDS[0] + " and " + kind + " disagree");
+                return;
+            }
+        }
+    }
+
+    // the messages and the unparsed program
+    private static String analyze(String kind, String source) throws IOException {
+        CharNum.num = 1;
+        ProgramNode program;
+        try {
+            program = new LrDriver(new Yylex(new StringReader(source))).parse();
+        } catch (Exception ex) {
+            return "syntax error";
+        }
+        List<Diagnostic> errors = new ArrayList<Diagnostic>();
+        ErrMsg.collector = errors;
+        Resolution links;
+        try {
+            links = program.nameAnalyzer(SymTable.create(kind));
+        } finally {
+            ErrMsg.collector = null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Diagnostic d : errors)
+            sb.append(d.format(0)).append('\n');
+        Path file = Files.createTempFile("symtablediff", ".b");
+        try {
+            UnparseWriter out = new UnparseWriter(file.toString());
+            out.setResolution(links);
+            program.unparse(out, 0);
+            out.close();
+            sb.append(new String(Files.readAllBytes(file), "UTF-8"));
+        } finally {
+            Files.delete(file);
+        }
+        return sb.toString();
+    }
+
+    private void fail(String name, String why) {
+        failures++;
+        System.out.println(name + ": " + why);
+    }
+}
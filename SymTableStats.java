@@ -0,0 +1,118 @@
+import java.util.Arrays;
+
+/**
+ * SymTableStats
+ *
+ * Counts of the work a SymTable does, for finding inputs that make name
+ * analysis slow.  Counting is off unless the JVM is started with
+ * -Db.symtable.stats=true (P4 --stats sets it).  ENABLED is a constant,
+ * so when it is false the JIT drops every `if (SymTableStats.ENABLED)`
+ * block in SymTable and the counting costs nothing.
+ *
+ * Counted are the calls of addScope, addDecl, lookupLocal, lookupGlobal
+ * and lookupStruct, the misses of each lookup, the scopes lookupGlobal
+ * searched, and a histogram of the number of open scopes at each lookup
+ * (the last bucket holds all depths from MAX_DEPTH up).
+ */
+class SymTableStats {
+    static final boolean ENABLED = Boolean.getBoolean("b.symtable.stats");
+    static final int MAX_DEPTH = 32;
+
+    long addScope;
+    long addDecl;
+    long lookupLocal;
+    long lookupLocalMisses;
+    long lookupGlobal;
+    long lookupGlobalMisses;
+    long lookupStruct;
+    long lookupStructMisses;
+    long scopesWalked;          // scopes searched by lookupGlobal
+    long[] depthHistogram = new long[MAX_DEPTH + 1];
+
+    // a lookup with depth scopes open
+    void atDepth(int depth) {
+        depthHistogram[depth < MAX_DEPTH ? depth : MAX_DEPTH]++;
+    }
+
+    /**
+     * Returns a copy of the counts as they are now.
+     */
+    public SymTableStats snapshot() {
+        SymTableStats s = new SymTableStats();
+        s.addScope = addScope;
+        s.addDecl = addDecl;
+        s.lookupLocal = lookupLocal;
+        s.lookupLocalMisses = lookupLocalMisses;
+        s.lookupGlobal = lookupGlobal;
+        s.lookupGlobalMisses = lookupGlobalMisses;
+        s.lookupStruct = lookupStruct;
+        s.lookupStructMisses = lookupStructMisses;
+        s.scopesWalked = scopesWalked;
+        s.depthHistogram = depthHistogram.clone();
+        return s;
+    }
+
+    public long getAddScope() {
+        return addScope;
+    }
+
+    public long getAddDecl() {
+        return addDecl;
+    }
+
+    public long getLookupLocal() {
+        return lookupLocal;
+    }
+
+    public long getLookupLocalHits() {
+        return lookupLocal - lookupLocalMisses;
+    }
+
+    public long getLookupLocalMisses() {
+        return lookupLocalMisses;
+    }
+
+    public long getLookupGlobal() {
+        return lookupGlobal;
+    }
+
+    public long getLookupGlobalHits() {
+        return lookupGlobal - lookupGlobalMisses;
+    }
+
+    public long getLookupGlobalMisses() {
+        return lookupGlobalMisses;
+    }
+
+    public long getLookupStruct() {
+        return lookupStruct;
+    }
+
+    public long getLookupStructHits() {
+        return lookupStruct - lookupStructMisses;
+    }
+
+    public long getLookupStructMisses() {
+        return lookupStructMisses;
+    }
+
+    public long getScopesWalked() {
+        return scopesWalked;
+    }
+
+    // average number of scopes a lookupGlobal searched
+    public double getAverageScopesWalked() {
+        return lookupGlobal == 0 ? 0.0 : (double)scopesWalked / lookupGlobal;
+    }
+
+    /**
+     * Returns the depth histogram: element d is the number of lookups made
+     * with d scopes open.  Trailing empty buckets are left out.
+     */
+    public long[] getDepthHistogram() {
+        int n = depthHistogram.length;
+        while (n > 0 && depthHistogram[n - 1] == 0)
+            n--;
+        return Arrays.copyOf(depthHistogram, n);
+    }
+}
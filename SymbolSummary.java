@@ -0,0 +1,212 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * SymbolSummary
+ *
+ * Reads and writes the global symbols of an analyzed program, so that
+ * another file can be analyzed against them without the source.  A
+ * summary holds every struct with its fields and every global variable
+ * and function with its type; nothing else about the program is needed
+ * to name-analyze code that uses it.
+ *
+ * The format is:
+ *
+ *     int    MAGIC, VERSION
+ *     int    number of structs, then each struct:
+ *                UTF name, int number of fields, each as UTF name + type
+ *     int    number of globals, then each global:
+ *                byte VAR + UTF name + type, or
+ *                byte FN + UTF name + return type + int n + n types
+ *
+ * and a type is a byte tag (INT, BOOL, VOID, STRUCT followed by the UTF
+ * struct name, or NONE for the types the analyzer leaves unset).  A
+ * struct is written after the structs its fields use, and a struct name
+ * may refer to a struct of a summary loaded earlier.
+ */
+class SymbolSummary {
+    private static final int MAGIC = 0x6253554d;   // "bSUM"
+    private static final int VERSION = 1;
+
+    // kinds of global
+    private static final int VAR = 0;
+    private static final int FN = 1;
+
+    // type tags
+    private static final int NONE = 0;
+    private static final int INT = 1;
+    private static final int BOOL = 2;
+    private static final int VOID = 3;
+    private static final int STRUCT = 4;
+
+    /**
+     * Writes the global symbols of table, except the names in skip (those
+     * loaded from other summaries), to file.
+     */
+    public static void write(SymTable table, Set<String> skip, Path file) throws IOException {
+        List<String> structNames = new ArrayList<String>();
+        Set<String> done = new HashSet<String>();
+        HashMap<String, Sym> structs = table.getStructDefinedList();
+        List<String> names = new ArrayList<String>(structs.keySet());
+        Collections.sort(names);
+        for (String name : names)
+            orderStruct(name, structs, skip, done, structNames);
+
+        HashMap<String, Sym> scope = table.getGlobalScope();
+        List<String> globals = new ArrayList<String>();
+        for (String name : scope.keySet())
+            if (!skip.contains(name))
+                globals.add(name);
+        Collections.sort(globals);
+
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(structNames.size());
+            for (String name : structNames) {
+                StructLayout layout = structs.get(name).getStructLayout();
+                out.writeUTF(name);
+                out.writeInt(layout.size());
+                for (int slot = 0; slot < layout.size(); slot++) {
+                    out.writeUTF(layout.getName(slot));
+                    writeType(out, layout.getField(slot).getType());
+                }
+            }
+            out.writeInt(globals.size());
+            for (String name : globals) {
+                Sym sym = scope.get(name);
+                if (sym instanceof FuncSym) {
+                    FuncSym fn = (FuncSym)sym;
+                    out.writeByte(FN);
+                    out.writeUTF(name);
+                    writeType(out, fn.getRetType());
+                    out.writeInt(fn.getNumParas());
+                    for (Type t : fn.getParas())
+                        writeType(out, t);
+                } else {
+                    out.writeByte(VAR);
+                    out.writeUTF(name);
+                    writeType(out, sym.getType());
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the symbols in file to the global scope and struct list of
+     * table.  Returns the names added.
+     * @throws IOException if the file cannot be read, is not a summary,
+     *         names a struct that is not loaded, or declares a name that
+     *         is already declared
+     */
+    public static Set<String> load(Path file, SymTable table) throws IOException {
+        Set<String> added = new HashSet<String>();
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("not a symbol summary");
+            int numStructs = in.readInt();
+            for (int i = 0; i < numStructs; i++) {
+                String name = in.readUTF();
+                Sym struct = new Sym(new StructType(name), true);
+                if (table.tryAddStruct(name, struct) != null)
+                    throw new IOException("struct " + name + " is already declared");
+                added.add(name);
+                StructLayout layout = struct.getStructLayout();
+                int numFields = in.readInt();
+                for (int j = 0; j < numFields; j++) {
+                    String field = in.readUTF();
+                    if (layout.tryAddField(field, symOf(readType(in, table), table)) != null)
+                        throw new IOException("struct " + name + " has two fields " + field);
+                }
+            }
+            int numGlobals = in.readInt();
+            for (int i = 0; i < numGlobals; i++) {
+                int kind = in.readByte();
+                String name = in.readUTF();
+                Sym sym;
+                if (kind == FN) {
+                    Type ret = readType(in, table);
+                    Type[] paras = new Type[in.readInt()];
+                    for (int j = 0; j < paras.length; j++)
+                        paras[j] = readType(in, table);
+                    sym = new FuncSym(ret, paras);
+                } else if (kind == VAR) {
+                    sym = symOf(readType(in, table), table);
+                } else {
+                    throw new IOException("bad global kind " + kind);
+                }
+                if (table.tryAddDecl(name, sym) != null)
+                    throw new IOException(name + " is already declared");
+                added.add(name);
+            }
+        }
+        return added;
+    }
+
+    // depth-first, so the structs used by name's fields come first
+    private static void orderStruct(String name, HashMap<String, Sym> structs,
+                                    Set<String> skip, Set<String> done, List<String> out) {
+        Sym struct = structs.get(name);
+        if (struct == null || skip.contains(name) || !done.add(name))
+            return;
+        StructLayout layout = struct.getStructLayout();
+        for (int slot = 0; slot < layout.size(); slot++) {
+            Sym field = layout.getField(slot);
+            if (field.checkIsStruct())
+                orderStruct(field.getType().toString(), structs, skip, done, out);
+        }
+        out.add(name);
+    }
+
+    // the Sym of a variable or field: one of struct type shares the
+    // struct's Sym, as in VarDeclNode
+    private static Sym symOf(Type type, SymTable table) {
+        if (type instanceof StructType)
+            return table.getStructDefinedList().get(((StructType)type).getName());
+        return new Sym(type);
+    }
+
+    private static void writeType(DataOutputStream out, Type t) throws IOException {
+        if (t == null) {
+            out.writeByte(NONE);
+        } else if (t == Type.INT) {
+            out.writeByte(INT);
+        } else if (t == Type.BOOL) {
+            out.writeByte(BOOL);
+        } else if (t == Type.VOID) {
+            out.writeByte(VOID);
+        } else if (t instanceof StructType) {
+            out.writeByte(STRUCT);
+            out.writeUTF(((StructType)t).getName());
+        } else {
+            throw new IOException("cannot write type " + t);
+        }
+    }
+
+    private static Type readType(DataInputStream in, SymTable table) throws IOException {
+        int tag = in.readByte();
+        switch (tag) {
+            case NONE:
+                return null;
+            case INT:
+                return Type.INT;
+            case BOOL:
+                return Type.BOOL;
+            case VOID:
+                return Type.VOID;
+            case STRUCT: {
+                String name = in.readUTF();
+                Sym struct = table.getStructDefinedList().get(name);
+                if (struct == null)
+                    throw new IOException("uses struct " + name
+                                          + ", whose summary is not loaded");
+                return struct.getType();
+            }
+            default:
+                throw new IOException("bad type tag " + tag);
+        }
+    }
+}
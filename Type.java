@@ -0,0 +1,116 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Type
+ *
+ * Canonical representation of b types.  There is exactly one object per
+ * primitive type, one StructType per struct declaration and one FnType per
+ * distinct function signature, so two types are the same exactly when they
+ * are the same object and type checks are reference comparisons.
+ *
+ * toString() gives the text that unparse prints after an identifier.
+ */
+abstract class Type {
+    public static final Type INT = new PrimType("int");
+    public static final Type BOOL = new PrimType("bool");
+    public static final Type VOID = new PrimType("void");
+}
+
+class PrimType extends Type {
+    private String name;
+
+    // only the singletons in Type are ever created
+    PrimType(String name) {
+        this.name = name;
+    }
+
+    public String toString() {
+        return name;
+    }
+}
+
+class StructType extends Type {
+    private String name;
+    private StructLayout layout;
+
+    public StructType(String name) {
+        this.name = name;
+        this.layout = new StructLayout();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public StructLayout getLayout() {
+        return layout;
+    }
+
+    public String toString() {
+        return name;
+    }
+}
+
+class FnType extends Type {
+    // every signature seen so far; functions with the same parameter and
+    // return types share one FnType
+    private static final ConcurrentHashMap<FnType, FnType> pool =
+        new ConcurrentHashMap<FnType, FnType>();
+
+    private Type retType;
+    private Type[] paras;
+    private int hash;
+    private String signature; // rendered once, on first toString()
+
+    private FnType(Type retType, Type[] paras) {
+        this.retType = retType;
+        this.paras = paras;
+        this.hash = 31 * Arrays.hashCode(paras) + retType.hashCode();
+    }
+
+    /**
+     * Returns the canonical FnType for a signature.
+     * @param retType the return type
+     * @param paras the parameter types; must not be modified afterwards
+     */
+    public static FnType of(Type retType, Type[] paras) {
+        FnType fn = new FnType(retType, paras);
+        FnType old = pool.putIfAbsent(fn, fn);
+        return old == null ? fn : old;
+    }
+
+    public Type getRetType() {
+        return retType;
+    }
+
+    public Type[] getParas() {
+        return paras;
+    }
+
+    public int hashCode() {
+        return hash;
+    }
+
+    // only used by the pool; canonical FnTypes are compared with ==
+    public boolean equals(Object o) {
+        if (!(o instanceof FnType))
+            return false;
+        FnType other = (FnType)o;
+        return hash == other.hash && retType == other.retType
+            && Arrays.equals(paras, other.paras);
+    }
+
+    public String toString() {
+        if (signature == null) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < paras.length; i++) {
+                if (i > 0)
+                    sb.append(", ");
+                sb.append(paras[i]);
+            }
+            signature = sb.append(" -> ").append(retType).toString();
+        }
+        return signature;
+    }
+}
@@ -0,0 +1,148 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+/**
+ * UnparseWriter
+ *
+ * The PrintWriter handed to every unparse method in ast.java.  Characters
+ * are collected in one large reusable char buffer and only encoded and
+ * written to the output file through a FileChannel when the buffer fills
+ * up or the writer is closed, so the many tiny print calls made while
+ * unparsing never reach the file system one by one.
+ *
+ * If a Resolution is set, each identifier is printed with the Sym it
+ * resolved to.
+ */
+class UnparseWriter extends PrintWriter {
+    // spaces shared by every call to indent()
+    private static final String SPACES = " ".repeat(256);
+
+    private Resolution resolution;
+
+    /**
+     * Opens (creating or truncating) the given file for unparsing.
+     * @param fileName name of the output file
+     */
+    public UnparseWriter(String fileName) throws IOException {
+        super(new ChannelSink(FileChannel.open(Paths.get(fileName),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)), false);
+    }
+
+    public Resolution getResolution() {
+        return resolution;
+    }
+
+    public void setResolution(Resolution resolution) {
+        this.resolution = resolution;
+    }
+
+    /**
+     * Writes indent spaces.
+     * @param indent number of spaces to write
+     */
+    public void indent(int indent) {
+        while (indent > SPACES.length()) {
+            write(SPACES, 0, SPACES.length());
+            indent -= SPACES.length();
+        }
+        if (indent > 0)
+            write(SPACES, 0, indent);
+    }
+}
+
+/**
+ * ChannelSink
+ *
+ * Writer that buffers characters in a char[] and encodes them into a
+ * FileChannel in large chunks.
+ */
+class ChannelSink extends Writer {
+    private static final int BUF_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final CharsetEncoder encoder;
+    private final char[] buf = new char[BUF_SIZE];
+    private final ByteBuffer bytes;
+    private int count;
+
+    public ChannelSink(FileChannel channel) {
+        this.channel = channel;
+        this.encoder = Charset.defaultCharset().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.bytes = ByteBuffer.allocate(
+                (int)(BUF_SIZE * encoder.maxBytesPerChar()));
+    }
+
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == BUF_SIZE)
+                drain();
+            int n = Math.min(len, BUF_SIZE - count);
+            System.arraycopy(cbuf, off, buf, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    public void write(String str, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == BUF_SIZE)
+                drain();
+            int n = Math.min(len, BUF_SIZE - count);
+            str.getChars(off, off + n, buf, count);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    public void write(int c) throws IOException {
+        if (count == BUF_SIZE)
+            drain();
+        buf[count++] = (char)c;
+    }
+
+    public void flush() throws IOException {
+        drain();
+    }
+
+    public void close() throws IOException {
+        try {
+            drain();
+            if (count > 0) {          // a dangling high surrogate
+                count = 0;
+                channel.write(ByteBuffer.wrap(encoder.replacement()));
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    // encode the buffered characters and hand them to the channel; a high
+    // surrogate at the very end is kept back until its pair arrives
+    private void drain() throws IOException {
+        int n = count;
+        if (n > 0 && Character.isHighSurrogate(buf[n - 1]))
+            n--;
+        if (n == 0)
+            return;
+        CharBuffer chars = CharBuffer.wrap(buf, 0, n);
+        bytes.clear();
+        encoder.reset();
+        encoder.encode(chars, bytes, true);
+        encoder.flush(bytes);
+        bytes.flip();
+        while (bytes.hasRemaining())
+            channel.write(bytes);
+        count -= n;
+        if (count > 0)
+            buf[0] = buf[n];
+    }
+}
@@ -12,6 +12,9 @@ import java.util.*;
 // The nodes for literals and ids contain line and character number
 // information; for string literals and identifiers, they also contain a
 // string; for integer literals, they also contain an integer value.
+// Identifiers are also numbered by the parser; name analysis records what
+// each one resolved to in a Resolution table indexed by that number, so
+// the tree itself is never modified after parsing.
 //
 // Here are all the different kinds of AST nodes and what kinds of children
 // they have.  All of these kinds of AST nodes are subclasses of "ASTnode".
@@ -109,11 +112,24 @@ import java.util.*;
 
 abstract class ASTnode { 
     // every subclass must provide an unparse operation
-    abstract public void unparse(PrintWriter p, int indent);
+    abstract public void unparse(UnparseWriter p, int indent);
+
+    // every subclass must also write itself in the binary AST format
+    abstract public void serialize(AstWriter w);
 
     // this method can be used by the unparse methods to do indenting
-    protected void addIndent(PrintWriter p, int indent) {
-        for (int k = 0; k < indent; k++) p.print(" ");
+    protected void addIndent(UnparseWriter p, int indent) {
+        p.indent(indent);
+    }
+
+    // appends to a list the parser is building; empty lists start out as
+    // an immutable Collections.emptyList(), so an empty list that is not
+    // one of the parser's own LinkedLists is replaced on the first add
+    static <T> List<T> addLast(List<T> list, T item) {
+        if (list.isEmpty() && !(list instanceof LinkedList))
+            list = new LinkedList<T>();
+        list.add(item);
+        return list;
     }
 }
 
@@ -123,31 +139,111 @@ abstract class ASTnode {
 // **********************************************************************
 
 class ProgramNode extends ASTnode {
-    public ProgramNode(DeclListNode L) {
+    public ProgramNode(DeclListNode L, int numIds) {
+        this(L, numIds, null);
+    }
+
+    // declTokens[i] is the number of tokens of the i-th declaration
+    public ProgramNode(DeclListNode L, int numIds, int[] declTokens) {
         myDeclList = L;
+        myNumIds = numIds;
+        myDeclTokens = declTokens;
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         myDeclList.unparse(p, indent);
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.PROGRAM);
+        w.writeInt(myNumIds);
+        w.writeInts(myDeclTokens);
+        myDeclList.serialize(w);
+    }
     // melody
-    public void nameAnalyzer(){
-        SymTable program = new SymTable();
-        myDeclList.nameAnalyzer(program);
+    // the returned table holds what each IdNode resolved to; hand it to
+    // the UnparseWriter to have the links printed
+    public Resolution nameAnalyzer(){
+        return nameAnalyzer(new ListSymTable());
         // for tracing - del later
         //System.out.println("program.nameAnalyzer");
     }
+    // analyze against a table that may already hold global declarations
+    public Resolution nameAnalyzer(SymTable program){
+        return nameAnalyzer(program, false);
+    }
+    // with globalsOnly, functions are only declared: their bodies are
+    // neither analyzed nor (if parsed lazily) parsed
+    @SuppressWarnings("unchecked")
+    public Resolution nameAnalyzer(SymTable program, boolean globalsOnly){
+        Resolution links = new Resolution(myNumIds);
+        Resolution outer = program.getResolution();
+        program.setResolution(links);
+        DependencyIndex<DeclNode> deps =
+            (DependencyIndex<DeclNode>)program.getDependencyIndex();
+        List<DeclNode> decls = myDeclList.getDecls();
+        ErrorLimits limits = program.getErrorLimits();
+        int declsWithErrors = 0;
+        int i = 0;
+        for (DeclNode decl : decls) {
+            // stop at the error limits (P4 --max-errors, --max-error-decls)
+            if (limits.limitReached(declsWithErrors)) {
+                limits.skipDecls(decls.size() - i);
+                break;
+            }
+            int errorsBefore = limits.getNumErrors();
+            // a JFR event for each declaration slower than its threshold
+            DeclEvent e = new DeclEvent();
+            e.begin();
+            // tell the index which declaration the lookups belong to
+            if (deps != null)
+                deps.enter(decl);
+            if (globalsOnly && decl instanceof FnDeclNode)
+                ((FnDeclNode)decl).declare(program);
+            else
+                decl.nameAnalyzer(program);
+            e.end();
+            if (limits.getNumErrors() > errorsBefore)
+                declsWithErrors++;
+            if (e.shouldCommit()) {
+                e.name = decl.getId().getID();
+                e.kind = (decl instanceof FnDeclNode) ? "function"
+                    : (decl instanceof StructDeclNode) ? "struct" : "variable";
+                e.line = decl.getId().getLine();
+                e.tokens = (myDeclTokens != null && i < myDeclTokens.length)
+                    ? myDeclTokens[i] : -1;
+                e.commit();
+            }
+            i++;
+        }
+        if (deps != null)
+            deps.enter(null);
+        program.setResolution(outer);
+        return links;
+    }
+    public DeclListNode getDeclList(){
+        return myDeclList;
+    }
     // melody
 
     // 1 kid
     private DeclListNode myDeclList;
+    private int myNumIds;  // IdNodes are numbered 0 .. myNumIds-1
+    private int[] myDeclTokens;  // tokens per declaration, or null
 }
 
 class DeclListNode extends ASTnode {
+    // shared by every empty declaration list
+    static final DeclListNode EMPTY = new DeclListNode(Collections.<DeclNode>emptyList());
+
     public DeclListNode(List<DeclNode> S) {
         myDecls = S;
     }
-    public void unparse(PrintWriter p, int indent) {
+
+    public static DeclListNode of(List<DeclNode> S) {
+        return S.isEmpty() ? EMPTY : new DeclListNode(S);
+    }
+    public void unparse(UnparseWriter p, int indent) {
         Iterator it = myDecls.iterator();
         try {
             while (it.hasNext()) {
@@ -158,6 +254,11 @@ class DeclListNode extends ASTnode {
             System.exit(-1);
         }
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.DECL_LIST);
+        w.writeList(myDecls);
+    }
     // melo
     public void nameAnalyzer(SymTable program){
         Iterator it = myDecls.iterator();
@@ -167,6 +268,15 @@ class DeclListNode extends ASTnode {
         // for tracing - del later
         //System.out.println("declListNode.nameAnalyzer");
     }
+    public List<DeclNode> getDecls(){
+        return myDecls;
+    }
+    // body of a struct: every decl is a VarDeclNode
+    public void fieldAnalyzer(SymTable program, StructLayout layout){
+        for (DeclNode decl : myDecls){
+            ((VarDeclNode)decl).fieldAnalyzer(program, layout);
+        }
+    }
     //
 
     // list of kids (DeclNodes)
@@ -178,7 +288,7 @@ class FormalsListNode extends ASTnode {
         myFormals = S;
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         Iterator<FormalDeclNode> it = myFormals.iterator();
         if (it.hasNext()) { // if there is at least one element
             it.next().unparse(p, indent);
@@ -188,6 +298,11 @@ class FormalsListNode extends ASTnode {
             }
         } 
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.FORMALS_LIST);
+        w.writeList(myFormals);
+    }
     //melo
     public void nameAnalyzer(SymTable program){
         Iterator it = myFormals.iterator();
@@ -197,10 +312,11 @@ class FormalsListNode extends ASTnode {
         // for tracing - del later
         //System.out.println("FormalsListNode.nameAnalyzer");
     }
-    public List<String> getList(){
-        List<String> output = new LinkedList<>();
+    public Type[] getTypes(SymTable program){
+        Type[] output = new Type[myFormals.size()];
+        int i = 0;
         for(FormalDeclNode a: myFormals){
-            output.add(a.getType());
+            output[i++] = a.getType(program);
         }
         return output;
     }
@@ -210,36 +326,93 @@ class FormalsListNode extends ASTnode {
 }
 
 class FnBodyNode extends ASTnode {
+    // a body that is not parsed yet (see LrDriver.setLazyBodies)
+    interface Deferred {
+        FnBodyNode parse();
+    }
+
     public FnBodyNode(DeclListNode declList, StmtListNode stmtList) {
         myDeclList = declList;
         myStmtList = stmtList;
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    // the kids are parsed by deferred when first needed
+    public FnBodyNode(Deferred deferred) {
+        myDeferred = deferred;
+    }
+
+    public void unparse(UnparseWriter p, int indent) {
+        parse();
         myDeclList.unparse(p, indent);
         myStmtList.unparse(p, indent);
     }
 
+    public void serialize(AstWriter w) {
+        // counting the nodes does not parse a deferred body
+        if (myDeferred != null && w.isCounting()) {
+            w.writeTag(AstWriter.FN_BODY);
+            return;
+        }
+        parse();
+        w.writeTag(AstWriter.FN_BODY);
+        myDeclList.serialize(w);
+        myStmtList.serialize(w);
+    }
+
     public void nameAnalyzer(SymTable program){
+        parse();
         myDeclList.nameAnalyzer(program);
         myStmtList.nameAnalyzer(program);
     }
+
+    public boolean isParsed() {
+        return myDeferred == null;
+    }
+
+    // the first use parses under the lock; myDeferred is volatile and set
+    // to null after the kids, so a thread that sees null sees the kids
+    private void parse() {
+        if (myDeferred == null)
+            return;
+        synchronized (this) {
+            Deferred deferred = myDeferred;
+            if (deferred == null)
+                return;
+            FnBodyNode body = deferred.parse();
+            myDeclList = body.myDeclList;
+            myStmtList = body.myStmtList;
+            myDeferred = null;
+        }
+    }
     // 2 kids
     private DeclListNode myDeclList;
     private StmtListNode myStmtList;
+    private volatile Deferred myDeferred;    // null once parsed
 }
 
 class StmtListNode extends ASTnode {
+    // shared by every empty statement list
+    static final StmtListNode EMPTY = new StmtListNode(Collections.<StmtNode>emptyList());
+
     public StmtListNode(List<StmtNode> S) {
         myStmts = S;
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public static StmtListNode of(List<StmtNode> S) {
+        return S.isEmpty() ? EMPTY : new StmtListNode(S);
+    }
+
+    public void unparse(UnparseWriter p, int indent) {
         Iterator<StmtNode> it = myStmts.iterator();
         while (it.hasNext()) {
             it.next().unparse(p, indent);
         }
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.STMT_LIST);
+        w.writeList(myStmts);
+    }
     // melo
     public void nameAnalyzer(SymTable program){
         Iterator<StmtNode> it = myStmts.iterator();
@@ -254,11 +427,18 @@ class StmtListNode extends ASTnode {
 }
 
 class ExpListNode extends ASTnode {
+    // shared by every call without arguments
+    static final ExpListNode EMPTY = new ExpListNode(Collections.<ExpNode>emptyList());
+
     public ExpListNode(List<ExpNode> S) {
         myExps = S;
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public static ExpListNode of(List<ExpNode> S) {
+        return S.isEmpty() ? EMPTY : new ExpListNode(S);
+    }
+
+    public void unparse(UnparseWriter p, int indent) {
         Iterator<ExpNode> it = myExps.iterator();
         if (it.hasNext()) { // if there is at least one element
             it.next().unparse(p, indent);
@@ -268,6 +448,11 @@ class ExpListNode extends ASTnode {
             }
         } 
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.EXP_LIST);
+        w.writeList(myExps);
+    }
     // melo
     public void nameAnalyzer(SymTable program){
         Iterator<ExpNode> it = myExps.iterator();
@@ -287,6 +472,8 @@ class ExpListNode extends ASTnode {
 abstract class DeclNode extends ASTnode {
     //melo
     abstract public void nameAnalyzer(SymTable program);
+    // the declared name
+    abstract public IdNode getId();
 }
 
 class VarDeclNode extends DeclNode {
@@ -296,63 +483,70 @@ class VarDeclNode extends DeclNode {
         mySize = size;
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         addIndent(p, indent);
         myType.unparse(p, 0);
         p.print(" ");
         myId.unparse(p, 0);
         p.println(";");
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.VAR_DECL);
+        myType.serialize(w);
+        myId.serialize(w);
+        w.writeInt(mySize);
+    }
     // melo
     public void nameAnalyzer(SymTable program){
         // case 1: varDecl
         // case 2： structDecl
-        if(myType.getType().equals("void")){
-            String msg = "Non-function declared void";
-            ErrMsg.fatal(myId.getLine(), myId.getChar(), msg);
+        Sym sym = declSym(program);
+        if(sym == null)
             return;
-        }
-        if(mySize==-1){
-            try {
-                program.addDecl(myId.getID(),new Sym(myType.getType()));
-            } catch (DuplicateSymException e) {
-                String msg = "Multiply declared identifier";
-                ErrMsg.fatal(myId.getLine(), myId.getChar(), msg);
-            } catch (Exception e){
-                System.out.println(e);
-            }
-            
-        }
-        else{
-            // check if defined & multiple declared 
-            Sym struct = program.lookupStruct(myType.getType());
-            //System.out.println("before");
-            //program.print();
-            //program.printStr();
-            if(struct==null){
-                //System.out.println(myType.getType());
-                String msg = "Invalid name of struct type";
-                ErrMsg.fatal(myId.getLine(), myId.getChar(), msg);
-                return;
-            }else{
-                try{
-                    program.addDecl(myId.getID(), struct);
-                }catch (DuplicateSymException e) {
-                    String msg = "Multiply declared identifier";
-                    ErrMsg.fatal(myId.getLine(), myId.getChar(), msg);
-                } catch (Exception e){
-                    System.out.println(e);
-                }
-            }
-            //System.out.println("after");
-            //program.print();
-            //program.printStr();
+        if (program.tryAddDecl(myId.getID(), sym) != null) {
+            String msg = "Multiply declared identifier";
+            program.getErrorLimits().fatal(myId.getLine(), myId.getChar(), msg);
         }
         // for tracing - del later
         //System.out.println("var.nameAnalyzer");
     }
+    // field of a struct: same checks, but the name goes into the layout
+    // (a field may not share its name with a struct either)
+    public void fieldAnalyzer(SymTable program, StructLayout layout){
+        Sym sym = declSym(program);
+        if(sym == null)
+            return;
+        if(program.lookupStruct(myId.getID()) != null
+           || layout.tryAddField(myId.getID(), sym) != null) {
+            String msg = "Multiply declared identifier";
+            program.getErrorLimits().fatal(myId.getLine(), myId.getChar(), msg);
+        }
+    }
+    // the Sym to declare, or null (after reporting) if the type is invalid
+    private Sym declSym(SymTable program){
+        Type type = myType.getType(program);
+        if(type == null){
+            // the struct type is not defined
+            String msg = "Invalid name of struct type";
+            program.getErrorLimits().fatal(myId.getLine(), myId.getChar(), msg);
+            return null;
+        }
+        if(type == Type.VOID){
+            String msg = "Non-function declared void";
+            program.getErrorLimits().fatal(myId.getLine(), myId.getChar(), msg);
+            return null;
+        }
+        // a variable of struct type shares the struct's Sym
+        if(type instanceof StructType)
+            return program.getStructDefinedList().get(((StructType)type).getName());
+        return new Sym(type);
+    }
     // melo
 
+    public IdNode getId(){
+        return myId;
+    }
     // 3 kids
     private TypeNode myType;
     private IdNode myId;
@@ -372,7 +566,7 @@ class FnDeclNode extends DeclNode {
         myBody = body;
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         addIndent(p, indent);
         myType.unparse(p, 0);
         p.print(" ");
@@ -383,29 +577,36 @@ class FnDeclNode extends DeclNode {
         myBody.unparse(p, indent+4);
         p.println("}\n");
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.FN_DECL);
+        myType.serialize(w);
+        myId.serialize(w);
+        myFormalsList.serialize(w);
+        myBody.serialize(w);
+    }
     //melo todo! err case
     public void nameAnalyzer(SymTable program){  
-        try {
-            program.addDecl(myId.getID(), new FuncSym(myType.getType(),myFormalsList.getList()));
-        } catch (DuplicateSymException e) {
-            String msg = "Multiply declared identifier";
-            ErrMsg.fatal(myId.getLine(), myId.getChar(), msg);
-        } catch (Exception e){
-            System.out.println(e);
-        }
-            
+        declare(program);
         program.addScope();
         myFormalsList.nameAnalyzer(program);
         myBody.nameAnalyzer(program);
-        try {
-            program.removeScope();
-        } catch (Exception e) {
-            System.out.println(e);
-        }
+        program.tryRemoveScope();
         
     }
+    // adds the function to program, without looking at its body
+    public void declare(SymTable program){
+        Sym fn = new FuncSym(myType.getType(program),myFormalsList.getTypes(program));
+        if (program.tryAddDecl(myId.getID(), fn) != null) {
+            String msg = "Multiply declared identifier";
+            program.getErrorLimits().fatal(myId.getLine(), myId.getChar(), msg);
+        }
+    }
     //melo
 
+    public IdNode getId(){
+        return myId;
+    }
     // 4 kids
     private TypeNode myType;
     private IdNode myId;
@@ -419,24 +620,29 @@ class FormalDeclNode extends DeclNode {
         myId = id;
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         myType.unparse(p, 0);
         p.print(" ");
         myId.unparse(p, 0);
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.FORMAL_DECL);
+        myType.serialize(w);
+        myId.serialize(w);
+    }
     //melo 
     public void nameAnalyzer(SymTable program){
-        try {
-            program.addDecl(myId.getID(), new Sym(myType.getType()));
-        } catch (DuplicateSymException e) {
+        if (program.tryAddDecl(myId.getID(), new Sym(myType.getType(program))) != null) {
             String msg = "Multiply declared identifier";
-            ErrMsg.fatal(myId.getLine(), myId.getChar(), msg);
-        } catch (Exception e){
-            System.out.println(e);
+            program.getErrorLimits().fatal(myId.getLine(), myId.getChar(), msg);
         }
     }
-    public String getType(){
-        return myType.getType();
+    public Type getType(SymTable program){
+        return myType.getType(program);
+    }
+    public IdNode getId(){
+        return myId;
     }
     //melo
     // 2 kids
@@ -450,7 +656,7 @@ class StructDeclNode extends DeclNode {
         myDeclList = declList;
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         addIndent(p, indent);
         p.print("struct ");
         myId.unparse(p, 0);
@@ -460,23 +666,27 @@ class StructDeclNode extends DeclNode {
         p.println("};\n");
 
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.STRUCT_DECL);
+        myId.serialize(w);
+        myDeclList.serialize(w);
+    }
     //melo
     public void nameAnalyzer(SymTable program){
         // create a new sym and add it to structDefinedList
         //System.out.println("defining a struct: "+myId.getID());
-        Sym struct = new Sym(myId.getID(),true);
-        SymTable structScope = struct.getStructTable();
-        structScope.setStructDefinedList(program.getStructDefinedList());
-        try {
-            program.addStruct(myId.getID(),struct);
-        } catch (DuplicateSymException e) {
+        Sym struct = new Sym(new StructType(myId.getID()),true);
+        if (program.tryAddStruct(myId.getID(),struct) != null) {
             String msg = "Multiply declared identifier";
-            ErrMsg.fatal(myId.getLine(), myId.getChar(), msg);
+            program.getErrorLimits().fatal(myId.getLine(), myId.getChar(), msg);
             return;
         }
         
-        //structScope.addScope();
-        myDeclList.nameAnalyzer(structScope);
+        myDeclList.fieldAnalyzer(program, struct.getStructLayout());
+    }
+    public IdNode getId(){
+        return myId;
     }
     //melo
 
@@ -491,7 +701,10 @@ class StructDeclNode extends DeclNode {
 
 abstract class TypeNode extends ASTnode {
     //melo
-    abstract public String getType();
+    // the canonical Type the node names in program (Type.INT, Type.BOOL,
+    // Type.VOID, or the StructType of the struct program declares under
+    // that name), or null if it names no declared struct
+    abstract public Type getType(SymTable program);
     //
 }
 
@@ -499,12 +712,16 @@ class IntNode extends TypeNode {
     public IntNode() {
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         p.print("int");
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.INT_TYPE);
+    }
     //melo
-    public String getType(){
-        return "int";
+    public Type getType(SymTable program){
+        return Type.INT;
     }
     //melo
 }
@@ -513,12 +730,16 @@ class BoolNode extends TypeNode {
     public BoolNode() {
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         p.print("bool");
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.BOOL_TYPE);
+    }
     //melo
-    public String getType(){
-        return "bool";
+    public Type getType(SymTable program){
+        return Type.BOOL;
     }
     //melo
 }
@@ -527,12 +748,16 @@ class VoidNode extends TypeNode {
     public VoidNode() {
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         p.print("void");
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.VOID_TYPE);
+    }
     //melo
-    public String getType(){
-        return "void";
+    public Type getType(SymTable program){
+        return Type.VOID;
     }
     //melo
 }
@@ -542,13 +767,23 @@ class StructNode extends TypeNode {
         myId = id;
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         p.print("struct ");
         myId.unparse(p, 0);
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.STRUCT_TYPE);
+        myId.serialize(w);
+    }
     //melo
-    public String getType(){
-        return myId.getID(); //todo only idName or with struct?
+    // the struct the name resolves to in program
+    public Type getType(SymTable program){
+        Sym struct = program.lookupStruct(getName());
+        return (struct == null) ? null : struct.getType();
+    }
+    public String getName(){
+        return myId.getID();
     }
     //melo
     // 1 kid
@@ -570,11 +805,16 @@ class AssignStmtNode extends StmtNode {
         myAssign = assign;
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         addIndent(p, indent);
         myAssign.unparse(p, -1); // no parentheses
         p.println(";");
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.ASSIGN_STMT);
+        myAssign.serialize(w);
+    }
     // melo
     public void nameAnalyzer(SymTable program){
         myAssign.nameAnalyzer(program);
@@ -589,12 +829,17 @@ class PreIncStmtNode extends StmtNode {
         myExp = exp;
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         addIndent(p, indent);
 	    p.print("++");
         myExp.unparse(p, 0);
         p.println(";");
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.PRE_INC_STMT);
+        myExp.serialize(w);
+    }
     // melo
     public void nameAnalyzer(SymTable program){
         myExp.nameAnalyzer(program);
@@ -609,12 +854,17 @@ class PreDecStmtNode extends StmtNode {
         myExp = exp;
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         addIndent(p, indent);
 	p.print("--");
         myExp.unparse(p, 0);
         p.println(";");
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.PRE_DEC_STMT);
+        myExp.serialize(w);
+    }
     // melo
     public void nameAnalyzer(SymTable program){
         myExp.nameAnalyzer(program);
@@ -629,12 +879,17 @@ class ReceiveStmtNode extends StmtNode {
         myExp = e;
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         addIndent(p, indent);
         p.print("receive >> ");
         myExp.unparse(p, 0);
         p.println(";");
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.RECEIVE_STMT);
+        myExp.serialize(w);
+    }
     // melo
     public void nameAnalyzer(SymTable program){
         myExp.nameAnalyzer(program);
@@ -649,12 +904,17 @@ class PrintStmtNode extends StmtNode {
         myExp = exp;
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         addIndent(p, indent);
         p.print("print << ");
         myExp.unparse(p, 0);
         p.println(";");
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.PRINT_STMT);
+        myExp.serialize(w);
+    }
     // melo
     public void nameAnalyzer(SymTable program){
         myExp.nameAnalyzer(program);
@@ -671,7 +931,7 @@ class IfStmtNode extends StmtNode {
         myStmtList = slist;
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         addIndent(p, indent);
         p.print("if (");
         myExp.unparse(p, 0);
@@ -681,17 +941,20 @@ class IfStmtNode extends StmtNode {
         addIndent(p, indent);
         p.println("}");
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.IF_STMT);
+        myExp.serialize(w);
+        myDeclList.serialize(w);
+        myStmtList.serialize(w);
+    }
     // melo
     public void nameAnalyzer(SymTable program){
         myExp.nameAnalyzer(program);
         program.addScope();
         myDeclList.nameAnalyzer(program);
         myStmtList.nameAnalyzer(program);
-        try{
-            program.removeScope();
-        }catch (Exception e){
-            System.out.println(e);
-        }
+        program.tryRemoveScope();
     }
     // melo
     // e kids
@@ -711,7 +974,7 @@ class IfElseStmtNode extends StmtNode {
         myElseStmtList = slist2;
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         addIndent(p, indent);
         p.print("if (");
         myExp.unparse(p, 0);
@@ -727,25 +990,26 @@ class IfElseStmtNode extends StmtNode {
         addIndent(p, indent);
         p.println("}");        
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.IF_ELSE_STMT);
+        myExp.serialize(w);
+        myThenDeclList.serialize(w);
+        myThenStmtList.serialize(w);
+        myElseDeclList.serialize(w);
+        myElseStmtList.serialize(w);
+    }
     // melo
     public void nameAnalyzer(SymTable program){
         myExp.nameAnalyzer(program);
         program.addScope();
         myThenDeclList.nameAnalyzer(program);
         myThenStmtList.nameAnalyzer(program);
-        try{
-            program.removeScope();
-        }catch (Exception e){
-            System.out.println(e);
-        }
+        program.tryRemoveScope();
         program.addScope();
-        myElseStmtList.nameAnalyzer(program);
         myElseDeclList.nameAnalyzer(program);
-        try{
-            program.removeScope();
-        }catch (Exception e){
-            System.out.println(e);
-        }
+        myElseStmtList.nameAnalyzer(program);
+        program.tryRemoveScope();
     }
     // melo
     // 5 kids
@@ -763,7 +1027,7 @@ class WhileStmtNode extends StmtNode {
         myStmtList = slist;
     }
     
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         addIndent(p, indent);
         p.print("while (");
         myExp.unparse(p, 0);
@@ -773,17 +1037,20 @@ class WhileStmtNode extends StmtNode {
         addIndent(p, indent);
         p.println("}");
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.WHILE_STMT);
+        myExp.serialize(w);
+        myDeclList.serialize(w);
+        myStmtList.serialize(w);
+    }
     // melo
     public void nameAnalyzer(SymTable program){
         myExp.nameAnalyzer(program);
         program.addScope();
         myDeclList.nameAnalyzer(program);
         myStmtList.nameAnalyzer(program);
-        try{
-            program.removeScope();
-        }catch (Exception e){
-            System.out.println(e);
-        }
+        program.tryRemoveScope();
     }
     // melo
     // 3 kids
@@ -799,7 +1066,7 @@ class RepeatStmtNode extends StmtNode {
         myStmtList = slist;
     }
 	
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
 	addIndent(p, indent);
         p.print("repeat (");
         myExp.unparse(p, 0);
@@ -809,17 +1076,20 @@ class RepeatStmtNode extends StmtNode {
         addIndent(p, indent);
         p.println("}");
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.REPEAT_STMT);
+        myExp.serialize(w);
+        myDeclList.serialize(w);
+        myStmtList.serialize(w);
+    }
     // melo
     public void nameAnalyzer(SymTable program){
         myExp.nameAnalyzer(program);
         program.addScope();
         myDeclList.nameAnalyzer(program);
         myStmtList.nameAnalyzer(program);
-        try{
-            program.removeScope();
-        }catch (Exception e){
-            System.out.println(e);
-        }
+        program.tryRemoveScope();
     }
     // melo
     // 3 kids
@@ -833,11 +1103,16 @@ class CallStmtNode extends StmtNode {
         myCall = call;
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         addIndent(p, indent);
         myCall.unparse(p, indent);
         p.println(";");
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.CALL_STMT);
+        myCall.serialize(w);
+    }
     // melo
     public void nameAnalyzer(SymTable program){
         myCall.nameAnalyzer(program);
@@ -852,7 +1127,7 @@ class ReturnStmtNode extends StmtNode {
         myExp = exp;
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         addIndent(p, indent);
         p.print("return");
         if (myExp != null) {
@@ -861,6 +1136,11 @@ class ReturnStmtNode extends StmtNode {
         }
         p.println(";");
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.RETURN_STMT);
+        w.writeOptional(myExp);
+    }
     //melo
     public void nameAnalyzer(SymTable program){
         if(myExp!=null)
@@ -876,7 +1156,8 @@ class ReturnStmtNode extends StmtNode {
 // **********************************************************************
 
 abstract class ExpNode extends ASTnode {
-    abstract public SymTable nameAnalyzer(SymTable program);
+    // returns the layout of the struct the expression denotes, if any
+    abstract public StructLayout nameAnalyzer(SymTable program);
 }
 
 class IntLitNode extends ExpNode {
@@ -886,11 +1167,18 @@ class IntLitNode extends ExpNode {
         myIntVal = intVal;
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         p.print(myIntVal);
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.INT_LIT);
+        w.writeInt(myLineNum);
+        w.writeInt(myCharNum);
+        w.writeInt(myIntVal);
+    }
     //melo
-    public SymTable nameAnalyzer(SymTable program){return null;}
+    public StructLayout nameAnalyzer(SymTable program){return null;}
     //
 
     private int myLineNum;
@@ -905,11 +1193,18 @@ class StringLitNode extends ExpNode {
         myStrVal = strVal;
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         p.print(myStrVal);
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.STRING_LIT);
+        w.writeInt(myLineNum);
+        w.writeInt(myCharNum);
+        w.writeString(myStrVal);
+    }
     //melo
-    public SymTable nameAnalyzer(SymTable program){return null;}
+    public StructLayout nameAnalyzer(SymTable program){return null;}
     //
     private int myLineNum;
     private int myCharNum;
@@ -922,11 +1217,17 @@ class TrueNode extends ExpNode {
         myCharNum = charNum;
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         p.print("true");
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.TRUE);
+        w.writeInt(myLineNum);
+        w.writeInt(myCharNum);
+    }
     //melo
-    public SymTable nameAnalyzer(SymTable program){return null;}
+    public StructLayout nameAnalyzer(SymTable program){return null;}
     //
     private int myLineNum;
     private int myCharNum;
@@ -938,27 +1239,46 @@ class FalseNode extends ExpNode {
         myCharNum = charNum;
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         p.print("false");
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.FALSE);
+        w.writeInt(myLineNum);
+        w.writeInt(myCharNum);
+    }
     //melo
-    public SymTable nameAnalyzer(SymTable program){return null;}
+    public StructLayout nameAnalyzer(SymTable program){return null;}
     //
     private int myLineNum;
     private int myCharNum;
 }
 
 class IdNode extends ExpNode {
-    public IdNode(int lineNum, int charNum, String strVal) {
+    public IdNode(int lineNum, int charNum, String strVal, int nodeId) {
         myLineNum = lineNum;
         myCharNum = charNum;
         myStrVal = strVal;
+        myNodeId = nodeId;
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         p.print(myStrVal);
-        if (link!=null)
-            p.print("("+link.toString()+")");
+        Sym link = getSym(p.getResolution());
+        if (link!=null) {
+            p.print('(');
+            p.print(link.toString());
+            p.print(')');
+        }
+    }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.ID);
+        w.writeInt(myLineNum);
+        w.writeInt(myCharNum);
+        w.writeString(myStrVal);
+        w.writeInt(myNodeId);
     }
 
     // melo
@@ -971,27 +1291,30 @@ class IdNode extends ExpNode {
     public String getID(){
         return myStrVal;
     }
-    public Sym getSym(){
-        return link;
+    public int getNodeId(){
+        return myNodeId;
+    }
+    public Sym getSym(Resolution links){
+        if(links == null)
+            return null;
+        return links.get(myNodeId);
     }
-    public void setLink(Sym link){
-        this.link = link;
+    public void setLink(Resolution links, Sym link){
+        links.set(myNodeId, link);
     }
-    public SymTable nameAnalyzer(SymTable program){
+    public StructLayout nameAnalyzer(SymTable program){
         // structNode?
-        link = program.lookupGlobal(myStrVal);
+        Sym link = program.lookupGlobal(myStrVal);
+        setLink(program.getResolution(), link);
         if(link == null){
             String msg = "Undeclared identifier";
-            ErrMsg.fatal(myLineNum, myCharNum, msg);
+            program.getErrorLimits().fatal(myLineNum, myCharNum, msg);
             return null;
         }
-        if(link.checkIsStruct()){
-            return link.getStructTable();
-        }
-        return null;
+        return link.getStructLayout();
     }
     // melo
-    private Sym link; //melo
+    private int myNodeId; // index into the Resolution of the program
     private int myLineNum;
     private int myCharNum;
     private String myStrVal;
@@ -1003,32 +1326,46 @@ class DotAccessExpNode extends ExpNode {
         myId = id;
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         p.print("(");
         myLoc.unparse(p, 0);
         p.print(").");
         myId.unparse(p, 0);
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.DOT_ACCESS);
+        myLoc.serialize(w);
+        myId.serialize(w);
+    }
     //melo
-    public SymTable nameAnalyzer(SymTable program){
+    public StructLayout nameAnalyzer(SymTable program){
         // check if lhs is a declared struct
         // check if rhs is a valid field
-        SymTable structTable = myLoc.nameAnalyzer(program);
-        if(structTable == null && (myLoc instanceof IdNode)){
-            String msg = "Dot-access of non-struct type";
-            ErrMsg.fatal(((IdNode)myLoc).getLine(), ((IdNode)myLoc).getChar(), msg);
+        StructLayout layout = myLoc.nameAnalyzer(program);
+        if(layout == null){
+            // an invalid field on the left was already reported
+            IdNode lhs = (myLoc instanceof IdNode) ? (IdNode)myLoc
+                       : ((DotAccessExpNode)myLoc).getId();
+            if(lhs == myLoc || lhs.getSym(program.getResolution()) != null){
+                String msg = "Dot-access of non-struct type";
+                program.getErrorLimits().fatal(lhs.getLine(), lhs.getChar(), msg);
+            }
             return null;
         }
-        Sym link = structTable.lookupGlobal(myId.getID());
+        Sym link = layout.lookupField(myId.getID());
         if(link == null){
             String msg = "Invalid struct field name";
-            ErrMsg.fatal(myId.getLine(), myId.getChar(), msg);
+            program.getErrorLimits().fatal(myId.getLine(), myId.getChar(), msg);
         }
-        myId.setLink(link);
+        myId.setLink(program.getResolution(), link);
         if(link!=null)
-            return link.getStructTable();
+            return link.getStructLayout();
         return null;
     }
+    public IdNode getId(){
+        return myId;
+    }
     //melo
     // 2 kids
     private ExpNode myLoc;    
@@ -1041,15 +1378,21 @@ class AssignNode extends ExpNode {
         myExp = exp;
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         if (indent != -1)  p.print("(");
         myLhs.unparse(p, 0);
         p.print(" = ");
         myExp.unparse(p, 0);
         if (indent != -1)  p.print(")");
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.ASSIGN);
+        myLhs.serialize(w);
+        myExp.serialize(w);
+    }
     // melo
-    public SymTable nameAnalyzer(SymTable program){
+    public StructLayout nameAnalyzer(SymTable program){
         myLhs.nameAnalyzer(program);
         myExp.nameAnalyzer(program);
         return null;
@@ -1069,11 +1412,11 @@ class CallExpNode extends ExpNode {
 
     public CallExpNode(IdNode name) {
         myId = name;
-        myExpList = new ExpListNode(new LinkedList<ExpNode>());
+        myExpList = ExpListNode.EMPTY;
     }
 
     // ** unparse **
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         myId.unparse(p, 0);
         p.print("(");
         if (myExpList != null) {
@@ -1081,8 +1424,14 @@ class CallExpNode extends ExpNode {
         }
         p.print(")");
     }
+
+    public void serialize(AstWriter w) {
+        w.writeTag(AstWriter.CALL_EXP);
+        myId.serialize(w);
+        w.writeOptional(myExpList);
+    }
     //melo
-    public SymTable nameAnalyzer(SymTable program){
+    public StructLayout nameAnalyzer(SymTable program){
         myId.nameAnalyzer(program);
         myExpList.nameAnalyzer(program);
         return null;
@@ -1098,11 +1447,16 @@ abstract class UnaryExpNode extends ExpNode {
         myExp = exp;
     }
     //melo
-    public SymTable nameAnalyzer(SymTable program){
+    public StructLayout nameAnalyzer(SymTable program){
         myExp.nameAnalyzer(program);
         return null;
     }
     //
+    // write the tag of the subclass, then the operand
+    protected void serialize(AstWriter w, int tag) {
+        w.writeTag(tag);
+        myExp.serialize(w);
+    }
     // one child
     protected ExpNode myExp;
 }
@@ -1113,12 +1467,18 @@ abstract class BinaryExpNode extends ExpNode {
         myExp2 = exp2;
     }
     //melo
-    public SymTable nameAnalyzer(SymTable program){
+    public StructLayout nameAnalyzer(SymTable program){
         myExp1.nameAnalyzer(program);
         myExp2.nameAnalyzer(program);
         return null;
     }
     //
+    // write the tag of the subclass, then the operands
+    protected void serialize(AstWriter w, int tag) {
+        w.writeTag(tag);
+        myExp1.serialize(w);
+        myExp2.serialize(w);
+    }
     // two kids
     protected ExpNode myExp1;
     protected ExpNode myExp2;
@@ -1133,11 +1493,15 @@ class UnaryMinusNode extends UnaryExpNode {
         super(exp);
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         p.print("(-");
         myExp.unparse(p, 0);
         p.print(")");
     }
+
+    public void serialize(AstWriter w) {
+        serialize(w, AstWriter.UNARY_MINUS);
+    }
 }
 
 class NotNode extends UnaryExpNode {
@@ -1145,11 +1509,15 @@ class NotNode extends UnaryExpNode {
         super(exp);
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         p.print("(!");
         myExp.unparse(p, 0);
         p.print(")");
     }
+
+    public void serialize(AstWriter w) {
+        serialize(w, AstWriter.NOT);
+    }
 }
 
 // **********************************************************************
@@ -1161,13 +1529,17 @@ class PlusNode extends BinaryExpNode {
         super(exp1, exp2);
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
         p.print(" + ");
         myExp2.unparse(p, 0);
         p.print(")");
     }
+
+    public void serialize(AstWriter w) {
+        serialize(w, AstWriter.PLUS);
+    }
 }
 
 class MinusNode extends BinaryExpNode {
@@ -1175,13 +1547,17 @@ class MinusNode extends BinaryExpNode {
         super(exp1, exp2);
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
         p.print(" - ");
         myExp2.unparse(p, 0);
         p.print(")");
     }
+
+    public void serialize(AstWriter w) {
+        serialize(w, AstWriter.MINUS);
+    }
 }
 
 class TimesNode extends BinaryExpNode {
@@ -1189,13 +1565,17 @@ class TimesNode extends BinaryExpNode {
         super(exp1, exp2);
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
         p.print(" * ");
         myExp2.unparse(p, 0);
         p.print(")");
     }
+
+    public void serialize(AstWriter w) {
+        serialize(w, AstWriter.TIMES);
+    }
 }
 
 class DivideNode extends BinaryExpNode {
@@ -1203,13 +1583,17 @@ class DivideNode extends BinaryExpNode {
         super(exp1, exp2);
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
         p.print(" / ");
         myExp2.unparse(p, 0);
         p.print(")");
     }
+
+    public void serialize(AstWriter w) {
+        serialize(w, AstWriter.DIVIDE);
+    }
 }
 
 class AndNode extends BinaryExpNode {
@@ -1217,13 +1601,17 @@ class AndNode extends BinaryExpNode {
         super(exp1, exp2);
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
         p.print(" && ");
         myExp2.unparse(p, 0);
         p.print(")");
     }
+
+    public void serialize(AstWriter w) {
+        serialize(w, AstWriter.AND);
+    }
 }
 
 class OrNode extends BinaryExpNode {
@@ -1231,13 +1619,17 @@ class OrNode extends BinaryExpNode {
         super(exp1, exp2);
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
         p.print(" || ");
         myExp2.unparse(p, 0);
         p.print(")");
     }
+
+    public void serialize(AstWriter w) {
+        serialize(w, AstWriter.OR);
+    }
 }
 
 class EqualsNode extends BinaryExpNode {
@@ -1245,13 +1637,17 @@ class EqualsNode extends BinaryExpNode {
         super(exp1, exp2);
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
         p.print(" == ");
         myExp2.unparse(p, 0);
         p.print(")");
     }
+
+    public void serialize(AstWriter w) {
+        serialize(w, AstWriter.EQUALS);
+    }
 }
 
 class NotEqualsNode extends BinaryExpNode {
@@ -1259,13 +1655,17 @@ class NotEqualsNode extends BinaryExpNode {
         super(exp1, exp2);
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
         p.print(" != ");
         myExp2.unparse(p, 0);
         p.print(")");
     }
+
+    public void serialize(AstWriter w) {
+        serialize(w, AstWriter.NOT_EQUALS);
+    }
 }
 
 class LessNode extends BinaryExpNode {
@@ -1273,13 +1673,17 @@ class LessNode extends BinaryExpNode {
         super(exp1, exp2);
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
         p.print(" < ");
         myExp2.unparse(p, 0);
         p.print(")");
     }
+
+    public void serialize(AstWriter w) {
+        serialize(w, AstWriter.LESS);
+    }
 }
 
 class GreaterNode extends BinaryExpNode {
@@ -1287,13 +1691,17 @@ class GreaterNode extends BinaryExpNode {
         super(exp1, exp2);
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
         p.print(" > ");
         myExp2.unparse(p, 0);
         p.print(")");
     }
+
+    public void serialize(AstWriter w) {
+        serialize(w, AstWriter.GREATER);
+    }
 }
 
 class LessEqNode extends BinaryExpNode {
@@ -1301,13 +1709,17 @@ class LessEqNode extends BinaryExpNode {
         super(exp1, exp2);
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
         p.print(" <= ");
         myExp2.unparse(p, 0);
         p.print(")");
     }
+
+    public void serialize(AstWriter w) {
+        serialize(w, AstWriter.LESS_EQ);
+    }
 }
 
 class GreaterEqNode extends BinaryExpNode {
@@ -1315,11 +1727,15 @@ class GreaterEqNode extends BinaryExpNode {
         super(exp1, exp2);
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void unparse(UnparseWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
         p.print(" >= ");
         myExp2.unparse(p, 0);
         p.print(")");
     }
+
+    public void serialize(AstWriter w) {
+        serialize(w, AstWriter.GREATER_EQ);
+    }
 }
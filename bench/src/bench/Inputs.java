@@ -0,0 +1,47 @@
+package bench;
+
+import java.io.StringWriter;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+
+/**
+ * Inputs
+ *
+ * Builds the b programs the benchmarks run on with ProgramGenerator
+ * (reached by reflection, like the classes in Phases).  The same knobs
+ * always give the same text.
+ */
+final class Inputs {
+    private Inputs() {
+    }
+
+    /**
+     * Returns a program with the given number of functions whose blocks
+     * nest depth deep; other knobs keep ProgramGenerator's defaults.
+     */
+    static String program(int functions, int depth) throws ReflectiveOperationException {
+        return generate("functions", Integer.toString(functions),
+                        "scope-depth", Integer.toString(depth));
+    }
+
+    /**
+     * Returns the program ProgramGenerator writes for the given knobs,
+     * given as name, value, name, value, ...
+     */
+    static String generate(String... knobs) throws ReflectiveOperationException {
+        Class<?> c = Class.forName("ProgramGenerator");
+        Constructor<?> k = c.getDeclaredConstructor();
+        k.setAccessible(true);
+        Object gen = k.newInstance();
+        Method set = c.getDeclaredMethod("set", String.class, String.class);
+        set.setAccessible(true);
+        for (int i = 0; i + 1 < knobs.length; i += 2)
+            if (!(Boolean)set.invoke(gen, knobs[i], knobs[i + 1]))
+                throw new IllegalArgumentException("bad knob " + knobs[i] + "=" + knobs[i + 1]);
+        Method generate = c.getDeclaredMethod("generate", java.io.Writer.class);
+        generate.setAccessible(true);
+        StringWriter out = new StringWriter();
+        generate.invoke(gen, out);
+        return out.toString();
+    }
+}
@@ -0,0 +1,78 @@
+package bench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * PhaseBenchmarks
+ *
+ * One benchmark per phase of P4, each over the same generated program:
+ *   lex            Yylex.next_token until EOF
+ *   parse          LrDriver.parse (lexing included, as in P4 --parser=lr)
+ *   parseCup       the same parse through CUP's lr_parser (P4's default)
+ *   nameAnalyze    ProgramNode.nameAnalyzer on a parsed program
+ *   nameAnalyzeHash  the same against a HashSymTable
+ *   unparse        ASTnode.unparse of an analyzed program to a file
+ *
+ * The program size is set by the functions and depth parameters (see
+ * Inputs); override them with -p, e.g. -p functions=5000 -p depth=12.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PhaseBenchmarks {
+    @Param({"100", "1000"})
+    public int functions;
+
+    @Param({"2", "8"})
+    public int depth;
+
+    private String source;
+    private Object program;
+    private Object links;
+    private String outFile;
+
+    @Setup
+    public void setup() throws Throwable {
+        source = Inputs.program(functions, depth);
+        program = Phases.parse(source);
+        links = Phases.nameAnalyze(program);
+        File f = File.createTempFile("bench", ".out");
+        f.deleteOnExit();
+        outFile = f.getPath();
+    }
+
+    @Benchmark
+    public int lex() throws Throwable {
+        return Phases.lex(source);
+    }
+
+    @Benchmark
+    public Object parse() throws Throwable {
+        return Phases.parse(source);
+    }
+
+    @Benchmark
+    public Object parseCup() throws Throwable {
+        return Phases.parseCup(source);
+    }
+
+    @Benchmark
+    public Object nameAnalyze() throws Throwable {
+        return Phases.nameAnalyze(program);
+    }
+
+    @Benchmark
+    public Object nameAnalyzeHash() throws Throwable {
+        return Phases.nameAnalyze(program, "hash");
+    }
+
+    @Benchmark
+    public void unparse() throws Throwable {
+        Phases.unparse(program, links, outFile);
+    }
+}
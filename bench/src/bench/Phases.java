@@ -0,0 +1,183 @@
+package bench;
+
+import java.io.*;
+import java.lang.invoke.*;
+import java.lang.reflect.*;
+import java_cup.runtime.Scanner;
+import java_cup.runtime.Symbol;
+
+/**
+ * Phases
+ *
+ * Entry points into the analyzer for the benchmarks.  The analyzer's
+ * classes live in the unnamed package, which code in a named package (as
+ * JMH requires) cannot import, so they are reached once through
+ * reflection and then called through method handles.  Objects of the
+ * analyzer's types (ASTs, SymTables, Syms) are passed around as Object.
+ */
+final class Phases {
+    private static final MethodHandle NEW_YYLEX;
+    private static final MethodHandle NEW_PARSER;
+    private static final MethodHandle NEW_DRIVER;
+    private static final MethodHandle DRIVER_PARSE;
+    private static final MethodHandle NAME_ANALYZER;
+    private static final MethodHandle NAME_ANALYZER_WITH;
+    private static final MethodHandle NEW_WRITER;
+    private static final MethodHandle SET_RESOLUTION;
+    private static final MethodHandle UNPARSE;
+    private static final MethodHandle CREATE_SYMTABLE;
+    private static final MethodHandle ADD_SCOPE;
+    private static final MethodHandle ADD_DECL;
+    private static final MethodHandle LOOKUP_GLOBAL;
+    private static final MethodHandle REMOVE_SCOPE;
+    private static final MethodHandle NEW_SYM;
+    private static final Object INT_TYPE;
+    private static final Field CHAR_NUM;
+    private static final Field NAME_ANALYZER_FAIL;
+
+    static {
+        try {
+            Class<?> yylex = Class.forName("Yylex");
+            Class<?> program = Class.forName("ProgramNode");
+            Class<?> astNode = Class.forName("ASTnode");
+            Class<?> writer = Class.forName("UnparseWriter");
+            Class<?> resolution = Class.forName("Resolution");
+            Class<?> symTable = Class.forName("SymTable");
+            Class<?> sym = Class.forName("Sym");
+            Class<?> type = Class.forName("Type");
+            Class<?> parser = Class.forName("parser");
+            Class<?> driver = Class.forName("LrDriver");
+
+            NEW_YYLEX = constructor(yylex, Reader.class);
+            NEW_PARSER = constructor(parser, Scanner.class);
+            NEW_DRIVER = constructor(driver, Scanner.class);
+            DRIVER_PARSE = method(driver, "parse");
+            NAME_ANALYZER = method(program, "nameAnalyzer");
+            NAME_ANALYZER_WITH = method(program, "nameAnalyzer", symTable);
+            NEW_WRITER = constructor(writer, String.class);
+            SET_RESOLUTION = method(writer, "setResolution", resolution);
+            UNPARSE = method(astNode, "unparse", writer, int.class);
+            CREATE_SYMTABLE = method(symTable, "create", String.class);
+            ADD_SCOPE = method(symTable, "addScope");
+            ADD_DECL = method(symTable, "addDecl", String.class, sym);
+            LOOKUP_GLOBAL = method(symTable, "lookupGlobal", String.class);
+            REMOVE_SCOPE = method(symTable, "removeScope");
+            NEW_SYM = constructor(sym, type);
+
+            Field intType = type.getDeclaredField("INT");
+            intType.setAccessible(true);
+            INT_TYPE = intType.get(null);
+            CHAR_NUM = Class.forName("CharNum").getDeclaredField("num");
+            CHAR_NUM.setAccessible(true);
+            NAME_ANALYZER_FAIL = Class.forName("ErrMsg").getDeclaredField("nameAnalyzerFail");
+            NAME_ANALYZER_FAIL.setAccessible(true);
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private Phases() {
+    }
+
+    /**
+     * Returns a fresh scanner over source.
+     */
+    static Scanner lexer(String source) throws Throwable {
+        CHAR_NUM.setInt(null, 1);
+        return (Scanner)NEW_YYLEX.invoke((Reader)new StringReader(source));
+    }
+
+    /**
+     * Scans all of source; returns the number of tokens.
+     */
+    static int lex(String source) throws Throwable {
+        Scanner s = lexer(source);
+        int n = 0;
+        while (s.next_token().sym != 0)     // sym.EOF
+            n++;
+        return n;
+    }
+
+    /**
+     * Parses source with LrDriver, as P4 --parser=lr does; returns its
+     * ProgramNode.
+     */
+    static Object parse(String source) throws Throwable {
+        return DRIVER_PARSE.invoke(NEW_DRIVER.invoke(lexer(source)));
+    }
+
+    /**
+     * Parses source with CUP's own driver; returns its ProgramNode.
+     */
+    static Object parseCup(String source) throws Throwable {
+        java_cup.runtime.lr_parser p =
+            (java_cup.runtime.lr_parser)NEW_PARSER.invoke(lexer(source));
+        Symbol root = p.parse();
+        return root.value;
+    }
+
+    /**
+     * Name-analyzes a parsed program; returns its Resolution.
+     */
+    static Object nameAnalyze(Object program) throws Throwable {
+        NAME_ANALYZER_FAIL.setBoolean(null, false);
+        return NAME_ANALYZER.invoke(program);
+    }
+
+    /**
+     * Name-analyzes a parsed program against a new SymTable of the given
+     * kind; returns its Resolution.
+     */
+    static Object nameAnalyze(Object program, String symTableKind) throws Throwable {
+        NAME_ANALYZER_FAIL.setBoolean(null, false);
+        return NAME_ANALYZER_WITH.invoke(program, CREATE_SYMTABLE.invoke(symTableKind));
+    }
+
+    /**
+     * Unparses an analyzed program to file.
+     */
+    static void unparse(Object program, Object links, String file) throws Throwable {
+        PrintWriter out = (PrintWriter)NEW_WRITER.invoke(file);
+        SET_RESOLUTION.invoke(out, links);
+        UNPARSE.invoke(program, out, 0);
+        out.close();
+    }
+
+    static Object newSymTable(String kind) throws Throwable {
+        return CREATE_SYMTABLE.invoke(kind);
+    }
+
+    static Object newIntSym() throws Throwable {
+        return NEW_SYM.invoke(INT_TYPE);
+    }
+
+    static void addScope(Object table) throws Throwable {
+        ADD_SCOPE.invoke(table);
+    }
+
+    static void addDecl(Object table, String name, Object sym) throws Throwable {
+        ADD_DECL.invoke(table, name, sym);
+    }
+
+    static Object lookupGlobal(Object table, String name) throws Throwable {
+        return LOOKUP_GLOBAL.invoke(table, name);
+    }
+
+    static void removeScope(Object table) throws Throwable {
+        REMOVE_SCOPE.invoke(table);
+    }
+
+    private static MethodHandle constructor(Class<?> c, Class<?>... params)
+        throws ReflectiveOperationException {
+        Constructor<?> k = c.getDeclaredConstructor(params);
+        k.setAccessible(true);
+        return MethodHandles.lookup().unreflectConstructor(k);
+    }
+
+    private static MethodHandle method(Class<?> c, String name, Class<?>... params)
+        throws ReflectiveOperationException {
+        Method m = c.getDeclaredMethod(name, params);
+        m.setAccessible(true);
+        return MethodHandles.lookup().unreflect(m);
+    }
+}
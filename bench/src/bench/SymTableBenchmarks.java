@@ -0,0 +1,71 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * SymTableBenchmarks
+ *
+ * SymTable operations in the pattern name analysis uses them: a global
+ * scope holding the given number of names, then the given number of nested
+ * scopes each declaring a few locals, looking up every local and a global
+ * in each, and removing the scopes again, on each kind of SymTable.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SymTableBenchmarks {
+    private static final int LOCALS = 4;
+
+    @Param({"100", "10000"})
+    public int globals;
+
+    @Param({"2", "16"})
+    public int depth;
+
+    @Param({"list", "hash"})
+    public String kind;
+
+    private Object table;
+    private Object sym;
+    private String[] globalNames;
+    private String[][] localNames;
+
+    @Setup
+    public void setup() throws Throwable {
+        table = Phases.newSymTable(kind);
+        sym = Phases.newIntSym();
+        globalNames = new String[globals];
+        for (int i = 0; i < globals; i++) {
+            globalNames[i] = "g" + i;
+            Phases.addDecl(table, globalNames[i], sym);
+        }
+        localNames = new String[depth][LOCALS];
+        for (int d = 0; d < depth; d++)
+            for (int i = 0; i < LOCALS; i++)
+                localNames[d][i] = "l" + d + "_" + i;
+    }
+
+    @Benchmark
+    public void scopes(Blackhole bh) throws Throwable {
+        for (int d = 0; d < depth; d++) {
+            Phases.addScope(table);
+            for (String name : localNames[d])
+                Phases.addDecl(table, name, sym);
+            for (String name : localNames[d])
+                bh.consume(Phases.lookupGlobal(table, name));
+            bh.consume(Phases.lookupGlobal(table, globalNames[d % globals]));
+        }
+        for (int d = 0; d < depth; d++)
+            Phases.removeScope(table);
+    }
+
+    @Benchmark
+    public Object lookupGlobalMiss() throws Throwable {
+        return Phases.lookupGlobal(table, "undeclared");
+    }
+}
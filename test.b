@@ -74,3 +74,14 @@ void func5(){
     struct Lanran lanran1;
     lanran1.h1.a =1;
 }
+// locals of an else branch are visible in its statements
+void func6(){
+    if (tru){
+        int t;
+        t = 1;
+    }else{
+        int e;
+        e = 2;
+        print << e;
+    }
+}